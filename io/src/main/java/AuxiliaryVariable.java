@@ -0,0 +1,14 @@
+/**
+ * A variable introduced by an encoding (e.g., {@link CardinalityEncoding}), which does not correspond to a feature.
+ * Auxiliary variables are only equal to themselves and have no name of their own.
+ * In .sat files, they are omitted from the variable directory, so clausy reads them as auxiliary variables as well.
+ * In .model files, which have no notion of auxiliary variables, they are named in order of appearance.
+ */
+public final class AuxiliaryVariable {
+	static final String NAME_PREFIX = "_aux_";
+
+	@Override
+	public String toString() {
+		return NAME_PREFIX + Integer.toHexString(System.identityHashCode(this));
+	}
+}
@@ -0,0 +1,194 @@
+import de.ovgu.featureide.fm.core.editing.NodeCreator;
+import org.prop4j.Literal;
+import org.prop4j.Node;
+import org.sat4j.core.LiteralsUtils;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.core.ICDCL;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Backbone detection, which finds the literals that hold in all solutions of some constraints (i.e., the core and dead features).
+ *
+ * <p>The constraints are Tseitin-transformed once (see {@link CnfWriter#getClauses()}), and a first solution proposes a candidate literal for each variable.
+ * Each candidate is checked by solving under the assumption of its complement: if that is unsatisfiable, the candidate is in the backbone,
+ * otherwise the solution rules out all candidates that it falsifies.
+ * These solvers prefer the complement of each candidate when deciding, so each solution rules out as many candidates as it can.
+ * Candidates are split among parallel workers (see {@link Workers}),
+ * which share the candidates ruled out so far and add the backbone literals they find as unit clauses.
+ * FeatureIDE's constants for true and false (see {@link NodeCreator#varTrue}) are no candidates, as they are no features.
+ */
+public class Backbone {
+	/**
+	 * Minimum number of candidates per worker.
+	 */
+	private static final int MIN_WORKER_CANDIDATES = 1 << 6;
+	// states of candidates, shared by all solvers
+	private static final int UNKNOWN = 0;
+	private static final int FIXED = 1;
+	private static final int FREE = 2;
+	private static final int CONSTANT = 3;
+
+	/**
+	 * Phase selection that assigns each variable with an unknown candidate the complement of its candidate literal, and other variables false.
+	 */
+	private static final class ComplementPhaseSelection extends PhaseSelection {
+		private final int[] candidates;
+		private final AtomicIntegerArray states;
+
+		ComplementPhaseSelection(int[] candidates, AtomicIntegerArray states) {
+			this.candidates = candidates;
+			this.states = states;
+		}
+
+		@Override
+		public int select(int variable) {
+			return variable < candidates.length && candidates[variable] < 0 && states.get(variable) == UNKNOWN
+					? LiteralsUtils.posLit(variable) : LiteralsUtils.negLit(variable);
+		}
+	}
+
+	private final LinkedHashMap<Object, Integer> variableIndices = new LinkedHashMap<>();
+	private final int[][] clauses;
+	private final int encodingVariableCount;
+	private int workerCount;
+	private int solverCalls;
+	private boolean unsatisfiable;
+
+	/**
+	 * Creates a backbone detection for the given constraints.
+	 *
+	 * @param constraints the constraints, which may only contain negations, conjunctions, and disjunctions
+	 *                    (e.g., as returned by {@link NodeUtils#eliminateNonCNFOperators(Node, CardinalityEncoding)})
+	 */
+	Backbone(List<Node> constraints) {
+		for (Node constraint : constraints)
+			addVariables(constraint);
+		CnfWriter encoding = new CnfWriter(variableIndices.keySet());
+		for (Node constraint : constraints)
+			encoding.addConstraint(constraint);
+		clauses = encoding.getClauses();
+		encodingVariableCount = encoding.getVariableCount();
+	}
+
+	private void addVariables(Node node) {
+		if (node instanceof Literal)
+			variableIndices.computeIfAbsent(((Literal) node).var, variable -> variableIndices.size() + 1);
+		else
+			for (Node child : node.getChildren())
+				addVariables(child);
+	}
+
+	/**
+	 * Returns the backbone of the constraints as literals, in order of the first appearance of their variables.
+	 * Unsatisfiable constraints would have every literal in their backbone, so none is returned, and the constraints stay unsatisfiable.
+	 */
+	List<Literal> compute() {
+		int[] model = solve(newSolver(), new int[0]);
+		if (model == null) {
+			unsatisfiable = true;
+			return new ArrayList<>();
+		}
+		int candidateCount = variableIndices.size();
+		// the candidate literal of each variable, starting at index 1, as proposed by the first solution
+		int[] candidates = new int[candidateCount + 1];
+		for (int literal : model)
+			if (Math.abs(literal) <= candidateCount)
+				candidates[Math.abs(literal)] = literal;
+		AtomicIntegerArray states = new AtomicIntegerArray(candidateCount + 1);
+		for (Object constant : new Object[] { NodeCreator.varTrue, NodeCreator.varFalse })
+			if (variableIndices.containsKey(constant))
+				states.set(variableIndices.get(constant), CONSTANT);
+		Workers workers = new Workers(candidateCount, MIN_WORKER_CANDIDATES);
+		workerCount = workers.getCount();
+		solverCalls = 1 + workers.run(worker -> check(workers.getItems(worker, 1, candidates.length), candidates, states));
+
+		List<Literal> backbone = new ArrayList<>();
+		for (Object variable : variableIndices.keySet()) {
+			int index = variableIndices.get(variable);
+			if (states.get(index) == FIXED)
+				backbone.add(new Literal(variable, candidates[index] > 0));
+		}
+		return backbone;
+	}
+
+	/**
+	 * Checks the candidates of a worker that no solution has ruled out yet.
+	 *
+	 * @param indices the variables of the candidates of the worker
+	 * @return the number of solver calls
+	 */
+	private int check(int[] indices, int[] candidates, AtomicIntegerArray states) {
+		ISolver solver = newSolver();
+		if (solver instanceof ICDCL)
+			((ICDCL<?>) solver).getOrder().setPhaseSelectionStrategy(new ComplementPhaseSelection(candidates, states));
+		int calls = 0;
+		for (int index : indices) {
+			if (states.get(index) != UNKNOWN)
+				continue;
+			int[] model = solve(solver, new int[] { -candidates[index] });
+			calls++;
+			if (model == null) {
+				states.set(index, FIXED);
+				try {
+					solver.addClause(new VecInt(new int[] { candidates[index] }));
+				} catch (ContradictionException e) {
+					throw new IllegalStateException("backbone literal contradicts satisfiable constraints", e);
+				}
+			} else {
+				for (int literal : model)
+					if (Math.abs(literal) < candidates.length && literal == -candidates[Math.abs(literal)])
+						states.compareAndSet(Math.abs(literal), UNKNOWN, FREE);
+			}
+		}
+		return calls;
+	}
+
+	/**
+	 * Returns the index of a variable in the Tseitin transformation, or 0 if it does not occur in the constraints.
+	 */
+	int getIndex(Object variable) {
+		return variableIndices.getOrDefault(variable, 0);
+	}
+
+	/**
+	 * Returns a new solver for the Tseitin transformation of the constraints, or null if they are unsatisfiable at the top level.
+	 */
+	ISolver newSolver() {
+		return CnfWriter.newSolver(encodingVariableCount, clauses);
+	}
+
+	/**
+	 * Returns a solution under the given assumptions, or null if there is none (or the solver already found a contradiction).
+	 */
+	static int[] solve(ISolver solver, int[] assumptions) {
+		if (solver == null)
+			return null;
+		try {
+			return solver.isSatisfiable(new VecInt(assumptions)) ? solver.model() : null;
+		} catch (TimeoutException e) {
+			throw new RuntimeException("backbone computation timed out", e);
+		}
+	}
+
+	/**
+	 * Writes statistics on the backbone into a report.
+	 */
+	void report(Report report, List<Literal> backbone) {
+		if (unsatisfiable) {
+			report.println("backbone: none, as the constraints are unsatisfiable");
+			return;
+		}
+		long core = backbone.stream().filter(literal -> literal.positive).count();
+		long constants = variableIndices.keySet().stream()
+				.filter(variable -> variable.equals(NodeCreator.varTrue) || variable.equals(NodeCreator.varFalse)).count();
+		report.println("backbone: %d core and %d dead of %d variables, %d solver calls in %d parallel workers",
+				core, backbone.size() - core, variableIndices.size() - constants, solverCalls, workerCount);
+	}
+}
@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Converts many feature-model files in one JVM, as listed in a manifest.
+ * Jobs run in parallel on a work-stealing pool with one worker per available core.
+ *
+ * <p>Each non-empty line of the manifest that does not start with {@code #} describes one job as whitespace-separated fields:
+ * <pre>
+ * [--option=value ...] file format [feature,...] output
+ * </pre>
+ * All fields but the last are the same as on the command line, and the output file receives the converted file.
+ * Relative input files are resolved against the working directory, relative output files against the given output directory.
+ * A failing job does not affect the others, failures are reported in a summary after all jobs have finished.
+ * The output file of a failing job is removed, so it is never left incomplete.
+ */
+public class Batch {
+	private final Path manifestPath;
+	private final Path outputDirectory;
+
+	private static class Job extends RecursiveAction {
+		final int line;
+		final String[] args;
+		final Path outputPath;
+		Throwable failure;
+
+		Job(int line, String[] args, Path outputPath) {
+			this.line = line;
+			this.args = args;
+			this.outputPath = outputPath;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				if (outputPath == null)
+					throw new RuntimeException("usage: [--option=value ...] file format [feature,...] output");
+				try (FileChannel channel = FileChannel.open(outputPath,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					new Conversion(args, null).run(channel, StandardCharsets.UTF_8);
+				}
+			} catch (Throwable e) {
+				// also isolate errors (e.g., running out of memory on a large model), so the other jobs and the summary still run
+				failure = e;
+				try {
+					if (outputPath != null)
+						Files.deleteIfExists(outputPath);
+				} catch (IOException ignored) {
+				}
+			}
+		}
+	}
+
+	Batch(Path manifestPath, Path outputDirectory) {
+		this.manifestPath = manifestPath;
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * Runs all jobs in the manifest and prints a summary.
+	 *
+	 * @return whether all jobs succeeded
+	 */
+	boolean run() throws IOException {
+		List<Job> jobs = new ArrayList<>();
+		List<String> lines = Files.readAllLines(manifestPath);
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i).trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			String[] fields = line.split("\\s+");
+			int positionalFields = fields.length;
+			while (positionalFields > 0 && Options.isOption(fields[fields.length - positionalFields]))
+				positionalFields--;
+			if (positionalFields < 3 || positionalFields > 4)
+				jobs.add(new Job(i + 1, fields, null));
+			else
+				jobs.add(new Job(i + 1, Arrays.copyOf(fields, fields.length - 1),
+						outputDirectory.resolve(Paths.get(fields[fields.length - 1]))));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			pool.invoke(new RecursiveAction() {
+				@Override
+				protected void compute() {
+					ForkJoinTask.invokeAll(jobs);
+				}
+			});
+		} finally {
+			pool.shutdown();
+		}
+
+		int failed = 0;
+		for (Job job : jobs) {
+			if (job.failure != null) {
+				failed++;
+				System.err.printf("line %d (%s): %s%n", job.line, String.join(" ", job.args), job.failure);
+			}
+		}
+		System.err.printf("%d of %d jobs succeeded, %d failed%n", jobs.size() - failed, jobs.size(), failed);
+		return failed == 0;
+	}
+}
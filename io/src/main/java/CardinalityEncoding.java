@@ -0,0 +1,175 @@
+import org.prop4j.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodings of at-most-one constraints into clauses, as needed for alternative groups.
+ * The pairwise encoding needs no auxiliary variables, but a quadratic number of clauses.
+ * The other encodings need only a linear number of clauses, but introduce {@link AuxiliaryVariable}s.
+ * Each auxiliary variable is defined as the disjunction of some variables in the group (i.e., implied by each of them and implying their disjunction),
+ * so every solution of the group has exactly one extension to the auxiliary variables, and model counts are preserved.
+ */
+public enum CardinalityEncoding {
+	/**
+	 * One binary clause per pair of variables, which is what FeatureIDE does.
+	 */
+	PAIRWISE,
+	/**
+	 * Sequential counter (also known as ladder encoding), with one auxiliary variable per proper prefix of the group.
+	 */
+	SEQUENTIAL,
+	/**
+	 * Commander encoding, with one auxiliary variable per subgroup of three variables, applied recursively to the commanders.
+	 */
+	COMMANDER,
+	/**
+	 * Product encoding, which arranges the group in a grid with one auxiliary variable per row and column,
+	 * applied recursively to the rows and columns.
+	 */
+	PRODUCT,
+	/**
+	 * Pairwise encoding for small groups and product encoding for large groups, whichever needs fewer clauses.
+	 */
+	AUTO;
+
+	/**
+	 * Groups of this size or smaller are always encoded pairwise, as other encodings do not pay off.
+	 */
+	private static final int PAIRWISE_GROUP_SIZE = 4;
+	private static final int COMMANDER_GROUP_SIZE = 3;
+
+	static CardinalityEncoding parse(String name) {
+		for (CardinalityEncoding encoding : values())
+			if (encoding.name().equalsIgnoreCase(name))
+				return encoding;
+		throw new RuntimeException("invalid cardinality encoding " + name);
+	}
+
+	/**
+	 * Returns clauses that encode that at most one of the given literals is true.
+	 */
+	List<Node> atMostOne(Literal[] literals) {
+		List<Node> clauses = new ArrayList<>();
+		atMostOne(literals, clauses);
+		return clauses;
+	}
+
+	private void atMostOne(Literal[] literals, List<Node> clauses) {
+		if (literals.length <= PAIRWISE_GROUP_SIZE) {
+			pairwise(literals, clauses);
+			return;
+		}
+		switch (this) {
+			case SEQUENTIAL:
+				sequential(literals, clauses);
+				break;
+			case COMMANDER:
+				commander(literals, clauses);
+				break;
+			case PRODUCT:
+				product(literals, clauses);
+				break;
+			case AUTO:
+				if (getPairwiseSize(literals.length) <= getProductSize(literals.length))
+					pairwise(literals, clauses);
+				else
+					product(literals, clauses);
+				break;
+			default:
+				pairwise(literals, clauses);
+		}
+	}
+
+	private static void pairwise(Literal[] literals, List<Node> clauses) {
+		for (int i = 0; i < literals.length; i++)
+			for (int j = i + 1; j < literals.length; j++)
+				clauses.add(new Or(not(literals[i]), not(literals[j])));
+	}
+
+	private static void sequential(Literal[] literals, List<Node> clauses) {
+		// the first prefix is defined by its only variable, so it needs no auxiliary variable
+		Literal prefix = literals[0];
+		for (int i = 1; i < literals.length; i++) {
+			clauses.add(new Or(not(prefix), not(literals[i])));
+			if (i < literals.length - 1) {
+				Literal nextPrefix = new Literal(new AuxiliaryVariable());
+				clauses.add(new Or(not(literals[i]), nextPrefix.clone()));
+				clauses.add(new Or(not(prefix), nextPrefix.clone()));
+				clauses.add(new Or(not(nextPrefix), prefix.clone(), literals[i].clone()));
+				prefix = nextPrefix;
+			}
+		}
+	}
+
+	private void commander(Literal[] literals, List<Node> clauses) {
+		int groups = (literals.length + COMMANDER_GROUP_SIZE - 1) / COMMANDER_GROUP_SIZE;
+		Literal[] commanders = new Literal[groups];
+		for (int i = 0; i < groups; i++) {
+			int start = i * COMMANDER_GROUP_SIZE;
+			int end = Math.min(start + COMMANDER_GROUP_SIZE, literals.length);
+			Literal[] group = new Literal[end - start];
+			System.arraycopy(literals, start, group, 0, group.length);
+			commanders[i] = define(group, clauses);
+			pairwise(group, clauses);
+		}
+		atMostOne(commanders, clauses);
+	}
+
+	private void product(Literal[] literals, List<Node> clauses) {
+		int columns = (int) Math.ceil(Math.sqrt(literals.length));
+		int rows = (literals.length + columns - 1) / columns;
+		List<List<Literal>> rowGroups = new ArrayList<>(), columnGroups = new ArrayList<>();
+		for (int i = 0; i < rows; i++)
+			rowGroups.add(new ArrayList<>());
+		for (int i = 0; i < columns; i++)
+			columnGroups.add(new ArrayList<>());
+		for (int i = 0; i < literals.length; i++) {
+			rowGroups.get(i / columns).add(literals[i]);
+			columnGroups.get(i % columns).add(literals[i]);
+		}
+		Literal[] rowLiterals = new Literal[rows], columnLiterals = new Literal[columns];
+		for (int i = 0; i < rows; i++)
+			rowLiterals[i] = define(rowGroups.get(i).toArray(new Literal[0]), clauses);
+		for (int i = 0; i < columns; i++)
+			columnLiterals[i] = define(columnGroups.get(i).toArray(new Literal[0]), clauses);
+		atMostOne(rowLiterals, clauses);
+		atMostOne(columnLiterals, clauses);
+	}
+
+	/**
+	 * Adds clauses that define a new auxiliary variable as the disjunction of the given literals.
+	 * A single literal needs no definition, as it already is its own disjunction.
+	 *
+	 * @return a literal for the auxiliary variable, or the single literal
+	 */
+	private static Literal define(Literal[] literals, List<Node> clauses) {
+		if (literals.length == 1)
+			return literals[0];
+		Literal literal = new Literal(new AuxiliaryVariable());
+		for (Literal groupLiteral : literals)
+			clauses.add(new Or(not(groupLiteral), literal.clone()));
+		Node[] children = new Node[literals.length + 1];
+		children[0] = not(literal);
+		for (int i = 0; i < literals.length; i++)
+			children[i + 1] = literals[i].clone();
+		clauses.add(new Or(children));
+		return literal;
+	}
+
+	private static Node not(Literal literal) {
+		return new Not(literal.clone());
+	}
+
+	private static long getPairwiseSize(int n) {
+		return (long) n * (n - 1) / 2;
+	}
+
+	private static long getProductSize(int n) {
+		if (n <= PAIRWISE_GROUP_SIZE)
+			return getPairwiseSize(n);
+		int columns = (int) Math.ceil(Math.sqrt(n));
+		int rows = (n + columns - 1) / columns;
+		return 2L * n + rows + columns + getProductSize(rows) + getProductSize(columns);
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ * Transformations of feature-model formulas into conjunctive normal form, as needed for DIMACS files.
+ * Distributing disjunctions over conjunctions introduces no variables, but can blow up exponentially (e.g., on nested KConfig constraints).
+ * Definitional transformations stay linear in the formula size by introducing an {@link AuxiliaryVariable} for each compound subformula.
+ */
+public enum CnfTransformation {
+	/**
+	 * Distributive transformation of FeatureIDE, which needs no auxiliary variables.
+	 */
+	DISTRIBUTIVE,
+	/**
+	 * Tseitin transformation, which defines each auxiliary variable as equivalent to its subformula.
+	 * Every solution has exactly one extension to the auxiliary variables, so model counts are preserved.
+	 */
+	TSEITIN,
+	/**
+	 * Plaisted-Greenbaum transformation, which only encodes the implications that are needed for the polarity of each subformula.
+	 * Needs fewer clauses than {@link #TSEITIN}, but only preserves satisfiability, not model counts.
+	 */
+	PLAISTED_GREENBAUM,
+	/**
+	 * Distributive transformation for each constraint whose size after distribution is estimated to stay within a threshold,
+	 * and {@link #TSEITIN} transformation for the outliers that would blow up.
+	 * Most constraints need no auxiliary variables this way, and model counts are preserved.
+	 */
+	HYBRID;
+
+	static CnfTransformation parse(String name) {
+		for (CnfTransformation transformation : values())
+			if (transformation.toString().equalsIgnoreCase(name))
+				return transformation;
+		throw new RuntimeException("invalid CNF transformation " + name);
+	}
+
+	/**
+	 * Returns the name of this transformation as given in options (e.g., {@code plaisted-greenbaum}).
+	 */
+	@Override
+	public String toString() {
+		return name().toLowerCase().replace('_', '-');
+	}
+}
@@ -0,0 +1,616 @@
+import org.prop4j.*;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+
+/**
+ * Writer for DIMACS files that transforms nodes into conjunctive normal form with a definitional {@link CnfTransformation}.
+ * Conjunctions and disjunctions of literals at the top of each node are written as clauses right away.
+ * Every other compound subformula is replaced by an auxiliary variable (a gate), which is defined by additional clauses.
+ * Gates are hash-consed, so equal subformulas (up to the order of their operands) share one auxiliary variable,
+ * and the number of clauses stays linear in the size of the nodes.
+ * With the {@link CnfTransformation#HYBRID} transformation, each constraint is distributed instead if that is estimated to stay small.
+ *
+ * <p>Named variables are numbered first (in order of appearance), followed by all auxiliary variables (see {@link DimacsHeader}).
+ * For a projected slice, named variables that are not kept are numbered and marked like auxiliary variables,
+ * and a {@code c p show} line lists the kept variables for projected model counters.
+ */
+public class CnfWriter {
+	private static final byte POSITIVE = 1;
+	private static final byte NEGATIVE = 2;
+	private static final byte BOTH = POSITIVE | NEGATIVE;
+	private static final long ESTIMATE_LIMIT = Long.MAX_VALUE / 2;
+
+	/**
+	 * A conjunction or disjunction of literals, which are sorted and free of duplicates.
+	 */
+	private static final class Gate {
+		final boolean and;
+		final int[] literals;
+		final int hash;
+
+		Gate(boolean and, int[] literals) {
+			this.and = and;
+			this.literals = literals;
+			this.hash = 31 * Arrays.hashCode(literals) + (and ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Gate && and == ((Gate) o).and && Arrays.equals(literals, ((Gate) o).literals);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private final CnfTransformation transformation;
+	private final int threshold;
+	private final Report report;
+	private final Set<String> keptVariables;
+	private final HashMap<Object, Integer> variableMap = new HashMap<>();
+	private final HashMap<Gate, Integer> gateMap = new HashMap<>();
+	// the variable or gate for each index (starting at 1), literals are signed indices
+	private final List<Object> definitions = new ArrayList<>();
+	private byte[] polarities = new byte[1024];
+	// literals of top-level clauses, and the end of each clause in that array
+	private int[] clauseLiterals = new int[1024];
+	private int clauseLiteralCount;
+	private int[] clauseEnds = new int[256];
+	private int clauseCount;
+	// stack of literals of the clauses and gates currently being built
+	private int[] stack = new int[64];
+	private int stackSize;
+	// statistics on the constraint currently being added, for the report
+	private long estimatedClauses;
+	private long estimatedLiterals;
+	private boolean distributed;
+	private boolean defined;
+	private int namedVariableCount;
+	private Equivalences equivalences;
+
+	/**
+	 * Creates a writer for the given nodes (e.g., as returned by {@link NodeUtils#getNodes}) that projects away all variables except the given ones,
+	 * and numbers the given variables first (even if the nodes do not contain them).
+	 * The nodes are replaced with null once they are transformed, so they can be garbage-collected early.
+	 *
+	 * @param nodes          the nodes
+	 * @param options        the options, which determine the encoding for at-most-one constraints, the CNF transformation, and its threshold
+	 * @param report         the report, which receives the strategy chosen for each node
+	 * @param keptVariables  the names of the variables to list in the directory, or null for all
+	 * @param firstVariables the names of the variables to number first
+	 */
+	CnfWriter(List<Node> nodes, Options options, Report report, Set<String> keptVariables, Collection<String> firstVariables) {
+		this.keptVariables = keptVariables;
+		for (String variable : firstVariables)
+			getVariable(variable);
+		transformation = options.getCnfTransformation();
+		if (transformation == CnfTransformation.DISTRIBUTIVE)
+			throw new IllegalArgumentException("unsupported CNF transformation " + transformation);
+		threshold = options.getCnfThreshold();
+		this.report = report;
+		int constraint = 0;
+		for (ListIterator<Node> it = nodes.listIterator(); it.hasNext(); constraint++) {
+			Node node = NodeUtils.eliminateNonCNFOperators(it.next(), options.getCardinalityEncoding());
+			it.set(null);
+			int clauses = clauseCount, namedVariables = namedVariableCount, variables = definitions.size();
+			estimatedClauses = estimatedLiterals = 0;
+			distributed = defined = false;
+			addConstraint(node, true);
+			if (report.isEnabled())
+				report.println("constraint %d: %s, distribution estimated at %s clauses and %s literals, wrote %d clauses plus definitions of %d auxiliary variables",
+						constraint, distributed && defined ? "mixed" : defined ? "definitional" : "distributive",
+						formatEstimate(estimatedClauses), formatEstimate(estimatedLiterals),
+						clauseCount - clauses, definitions.size() - variables - (namedVariableCount - namedVariables));
+		}
+		propagatePolarities();
+	}
+
+	/**
+	 * Creates a writer without nodes that numbers the given variables first (in the given order, starting at 1),
+	 * to which constraints are added one by one, so they can be loaded into SAT solvers with {@link #getClauses()} instead of written.
+	 * All gates are defined in both directions, so each literal returned by {@link #encode(Node)} is equivalent to its node.
+	 *
+	 * @param firstVariables the variables to number first, which must have distinct names
+	 */
+	CnfWriter(Collection<?> firstVariables) {
+		keptVariables = null;
+		for (Object variable : firstVariables)
+			getVariable(variable);
+		transformation = CnfTransformation.TSEITIN;
+		threshold = 0;
+		report = new Report();
+	}
+
+	/**
+	 * Adds clauses that assert a node, which may only contain negations, conjunctions, and disjunctions
+	 * (e.g., as returned by {@link NodeUtils#eliminateNonCNFOperators(Node, CardinalityEncoding)}).
+	 */
+	void addConstraint(Node node) {
+		addConstraint(node, true);
+	}
+
+	/**
+	 * Returns a literal that is equivalent to a node (with the same restrictions as {@link #addConstraint(Node)}), defining gates if needed.
+	 */
+	int encode(Node node) {
+		return encode(node, true);
+	}
+
+	/**
+	 * Returns a new auxiliary variable (e.g., a selector), which occurs in no clause yet.
+	 */
+	int newVariable() {
+		return getVariable(new AuxiliaryVariable());
+	}
+
+	/**
+	 * Adds a clause over the literals returned by {@link #encode(Node)} and {@link #newVariable()}.
+	 */
+	void addClause(int[] clause) {
+		int start = stackSize;
+		for (int literal : clause)
+			push(literal);
+		addClause(start);
+	}
+
+	/**
+	 * Adds clauses that assert the given node (or its negation, if not positive).
+	 */
+	private void addConstraint(Node node, boolean positive) {
+		while (node instanceof Not) {
+			node = node.getChildren()[0];
+			positive = !positive;
+		}
+		if (!(node instanceof Literal) && isConjunction(node, positive)) {
+			for (Node child : node.getChildren())
+				addConstraint(child, positive);
+			return;
+		}
+		if (transformation == CnfTransformation.HYBRID || report.isEnabled()) {
+			long[] estimate = estimate(node, positive);
+			estimatedClauses = add(estimatedClauses, estimate[0]);
+			estimatedLiterals = add(estimatedLiterals, estimate[1]);
+			if (transformation == CnfTransformation.HYBRID && estimate[1] <= (long) threshold * countLiterals(node)) {
+				addDistributed(node, positive);
+				distributed = true;
+				return;
+			}
+		}
+		int start = stackSize;
+		if (node instanceof Literal)
+			push(encode(node, positive));
+		else
+			collect(node, false, positive);
+		boolean gates = false;
+		for (int i = start; i < stackSize; i++)
+			gates |= definitions.get(Math.abs(stack[i]) - 1) instanceof Gate;
+		if (gates)
+			defined = true;
+		else
+			distributed = true;
+		addClause(start);
+	}
+
+	/**
+	 * Estimates the number of clauses and literals that distributing the given node (or its negation, if not positive) yields.
+	 * Duplicate literals and tautologies are not detected, so this is an upper bound. Saturates at {@link #ESTIMATE_LIMIT}.
+	 *
+	 * @return the number of clauses and the number of literals
+	 */
+	private static long[] estimate(Node node, boolean positive) {
+		while (node instanceof Not) {
+			node = node.getChildren()[0];
+			positive = !positive;
+		}
+		if (node instanceof Literal)
+			return new long[] { 1, 1 };
+		boolean and = isConjunction(node, positive);
+		// the empty conjunction has no clauses, the empty disjunction has one empty clause
+		long clauses = and ? 0 : 1, literals = 0;
+		for (Node child : node.getChildren()) {
+			long[] estimate = estimate(child, positive);
+			if (and) {
+				clauses = add(clauses, estimate[0]);
+				literals = add(literals, estimate[1]);
+			} else {
+				// each clause of the product combines one clause of the operands so far with one clause of this operand
+				literals = add(multiply(literals, estimate[0]), multiply(estimate[1], clauses));
+				clauses = multiply(clauses, estimate[0]);
+			}
+		}
+		return new long[] { clauses, literals };
+	}
+
+	private static long add(long a, long b) {
+		return Math.min(a + b, ESTIMATE_LIMIT);
+	}
+
+	private static long multiply(long a, long b) {
+		if (a == 0 || b == 0)
+			return 0;
+		return a > ESTIMATE_LIMIT / b ? ESTIMATE_LIMIT : a * b;
+	}
+
+	private static String formatEstimate(long estimate) {
+		return estimate >= ESTIMATE_LIMIT ? ">" + ESTIMATE_LIMIT : String.valueOf(estimate);
+	}
+
+	private static int countLiterals(Node node) {
+		if (node instanceof Literal)
+			return 1;
+		int count = 0;
+		for (Node child : node.getChildren())
+			count += countLiterals(child);
+		return count;
+	}
+
+	/**
+	 * Adds the clauses of the given node (or its negation, if not positive) by distributing disjunctions over conjunctions.
+	 * Duplicate literals are removed from each clause, and tautologies are omitted.
+	 */
+	private void addDistributed(Node node, boolean positive) {
+		for (int[] clause : distribute(node, positive)) {
+			// sort by variable, so duplicate and complementary literals are adjacent
+			int[] keys = new int[clause.length];
+			for (int i = 0; i < clause.length; i++)
+				keys[i] = 2 * Math.abs(clause[i]) + (clause[i] < 0 ? 1 : 0);
+			Arrays.sort(keys);
+			int start = stackSize;
+			boolean tautology = false;
+			for (int i = 0; i < keys.length && !tautology; i++) {
+				if (i > 0 && keys[i] == keys[i - 1])
+					continue;
+				if (i > 0 && keys[i] >> 1 == keys[i - 1] >> 1)
+					tautology = true;
+				else
+					push((keys[i] & 1) == 0 ? keys[i] >> 1 : -(keys[i] >> 1));
+			}
+			if (tautology)
+				stackSize = start;
+			else
+				addClause(start);
+		}
+	}
+
+	private List<int[]> distribute(Node node, boolean positive) {
+		while (node instanceof Not) {
+			node = node.getChildren()[0];
+			positive = !positive;
+		}
+		List<int[]> clauses = new ArrayList<>();
+		if (node instanceof Literal) {
+			clauses.add(new int[] { encode(node, positive) });
+			return clauses;
+		}
+		boolean and = isConjunction(node, positive);
+		if (!and)
+			clauses.add(new int[0]);
+		for (Node child : node.getChildren()) {
+			List<int[]> childClauses = distribute(child, positive);
+			if (and) {
+				clauses.addAll(childClauses);
+			} else {
+				List<int[]> product = new ArrayList<>(clauses.size() * childClauses.size());
+				for (int[] clause : clauses) {
+					for (int[] childClause : childClauses) {
+						int[] combined = Arrays.copyOf(clause, clause.length + childClause.length);
+						System.arraycopy(childClause, 0, combined, clause.length, childClause.length);
+						product.add(combined);
+					}
+				}
+				clauses = product;
+			}
+		}
+		return clauses;
+	}
+
+	/**
+	 * Returns whether the given compound node (or its negation, if not positive) acts as a conjunction.
+	 */
+	private static boolean isConjunction(Node node, boolean positive) {
+		if (!(node instanceof And) && !(node instanceof Or))
+			throw new IllegalArgumentException("unsupported node type " + node.getClass());
+		return (node instanceof And) == positive;
+	}
+
+	/**
+	 * Pushes a literal for each operand of the given node (or its negation, if not positive),
+	 * flattening nested operands that act as the same operator.
+	 */
+	private void collect(Node node, boolean and, boolean positive) {
+		for (Node child : node.getChildren()) {
+			boolean childPositive = positive;
+			while (child instanceof Not) {
+				child = child.getChildren()[0];
+				childPositive = !childPositive;
+			}
+			if (!(child instanceof Literal) && isConjunction(child, childPositive) == and)
+				collect(child, and, childPositive);
+			else
+				push(encode(child, childPositive));
+		}
+	}
+
+	/**
+	 * Returns a literal that is equivalent to the given node (or its negation, if not positive), defining a gate if needed.
+	 */
+	private int encode(Node node, boolean positive) {
+		while (node instanceof Not) {
+			node = node.getChildren()[0];
+			positive = !positive;
+		}
+		if (node instanceof Literal) {
+			int index = getVariable(((Literal) node).var);
+			return ((Literal) node).positive == positive ? index : -index;
+		}
+		boolean and = isConjunction(node, positive);
+		int start = stackSize;
+		collect(node, and, positive);
+		Arrays.sort(stack, start, stackSize);
+		int end = start;
+		for (int i = start; i < stackSize; i++)
+			if (end == start || stack[i] != stack[end - 1])
+				stack[end++] = stack[i];
+		stackSize = start;
+		if (end - start == 1)
+			return stack[start];
+		Gate gate = new Gate(and, Arrays.copyOfRange(stack, start, end));
+		Integer index = gateMap.get(gate);
+		if (index == null) {
+			index = addDefinition(gate);
+			gateMap.put(gate, index);
+		}
+		return index;
+	}
+
+	private int getVariable(Object variable) {
+		Object key = variable instanceof AuxiliaryVariable ? variable : String.valueOf(variable);
+		Integer index = variableMap.get(key);
+		if (index == null) {
+			index = addDefinition(key);
+			variableMap.put(key, index);
+			if (key instanceof String)
+				namedVariableCount++;
+		}
+		return index;
+	}
+
+	private int addDefinition(Object definition) {
+		definitions.add(definition);
+		int index = definitions.size();
+		if (index >= polarities.length)
+			polarities = Arrays.copyOf(polarities, 2 * polarities.length);
+		return index;
+	}
+
+	private void push(int literal) {
+		if (stackSize == stack.length)
+			stack = Arrays.copyOf(stack, 2 * stack.length);
+		stack[stackSize++] = literal;
+	}
+
+	/**
+	 * Adds the literals on the stack above the given position as a top-level clause and pops them.
+	 * An empty clause is written as two contradicting unit clauses, as FeatureIDE cannot read empty clauses.
+	 */
+	private void addClause(int start) {
+		if (stackSize == start) {
+			int index = getVariable(new AuxiliaryVariable());
+			push(index);
+			addClause(start);
+			push(-index);
+			addClause(start);
+			return;
+		}
+		for (int i = start; i < stackSize; i++) {
+			int literal = stack[i];
+			if (clauseLiteralCount == clauseLiterals.length)
+				clauseLiterals = Arrays.copyOf(clauseLiterals, 2 * clauseLiterals.length);
+			clauseLiterals[clauseLiteralCount++] = literal;
+			polarities[Math.abs(literal)] |= literal > 0 ? POSITIVE : NEGATIVE;
+		}
+		if (clauseCount == clauseEnds.length)
+			clauseEnds = Arrays.copyOf(clauseEnds, 2 * clauseEnds.length);
+		clauseEnds[clauseCount++] = clauseLiteralCount;
+		stackSize = start;
+	}
+
+	/**
+	 * Determines which implications are needed for each gate.
+	 * Operands of gates are always defined before the gates themselves, so a single pass in reverse order suffices.
+	 */
+	private void propagatePolarities() {
+		for (int index = definitions.size(); index > 0; index--) {
+			if (!(definitions.get(index - 1) instanceof Gate))
+				continue;
+			if (transformation != CnfTransformation.PLAISTED_GREENBAUM)
+				polarities[index] = BOTH;
+			byte polarity = polarities[index];
+			byte flipped = (byte) (((polarity & POSITIVE) != 0 ? NEGATIVE : 0) | ((polarity & NEGATIVE) != 0 ? POSITIVE : 0));
+			for (int literal : ((Gate) definitions.get(index - 1)).literals)
+				polarities[Math.abs(literal)] |= literal > 0 ? polarity : flipped;
+		}
+	}
+
+	/**
+	 * Sets the equivalences whose members are listed after their representatives in the variable directory (see {@link Equivalences#write}).
+	 */
+	void setEquivalences(Equivalences equivalences) {
+		this.equivalences = equivalences;
+	}
+
+	/**
+	 * Writes the DIMACS file into a channel, encoding variable names with the given charset.
+	 * The channel is not closed.
+	 */
+	void write(WritableByteChannel channel, Charset charset) throws IOException {
+		int[] numbers = new int[definitions.size() + 1];
+		int variableCount = 0;
+		for (int index = 1; index <= definitions.size(); index++)
+			if (isNamed(index))
+				numbers[index] = ++variableCount;
+		int namedCount = variableCount;
+		for (int index = 1; index <= definitions.size(); index++)
+			if (!isNamed(index))
+				numbers[index] = ++variableCount;
+
+		int count = getClauseCount();
+
+		report.println("wrote %d variables (%d auxiliary) and %d clauses", variableCount, variableCount - namedCount, count);
+
+		String[] names = new String[namedCount];
+		for (int index = 1; index <= definitions.size(); index++)
+			if (isNamed(index))
+				names[numbers[index] - 1] = (String) definitions.get(index - 1);
+		OutputBuffer out = new OutputBuffer(channel);
+		DimacsHeader.write(out, names, variableCount, count, keptVariables != null, equivalences, charset);
+
+		for (int i = 0, start = 0; i < clauseCount; start = clauseEnds[i++]) {
+			for (int j = start; j < clauseEnds[i]; j++)
+				putLiteral(out, numbers, clauseLiterals[j]);
+			out.put(DimacsHeader.CLAUSE_END);
+		}
+		for (int index = 1; index <= definitions.size(); index++) {
+			if (definitions.get(index - 1) instanceof Gate) {
+				for (int[] clause : getDefinition(index, (Gate) definitions.get(index - 1))) {
+					for (int literal : clause)
+						putLiteral(out, numbers, literal);
+					out.put(DimacsHeader.CLAUSE_END);
+				}
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Returns the number of clauses of the CNF, including the clauses that define gates.
+	 */
+	int getClauseCount() {
+		int count = clauseCount;
+		for (int index = 1; index <= definitions.size(); index++) {
+			if (definitions.get(index - 1) instanceof Gate) {
+				Gate gate = (Gate) definitions.get(index - 1);
+				if ((polarities[index] & POSITIVE) != 0)
+					count += gate.and ? gate.literals.length : 1;
+				if ((polarities[index] & NEGATIVE) != 0)
+					count += gate.and ? 1 : gate.literals.length;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the clauses of the CNF in the order they are written, including the clauses that define gates.
+	 * Unlike in {@link #write}, variables are numbered in order of their definition (starting at 1), so auxiliary variables are interleaved with named ones.
+	 */
+	int[][] getClauses() {
+		propagatePolarities();
+		int[][] clauses = new int[getClauseCount()][];
+		int count = 0;
+		for (int i = 0, start = 0; i < clauseCount; start = clauseEnds[i++])
+			clauses[count++] = Arrays.copyOfRange(clauseLiterals, start, clauseEnds[i]);
+		for (int index = 1; index <= definitions.size(); index++) {
+			if (definitions.get(index - 1) instanceof Gate)
+				for (int[] clause : getDefinition(index, (Gate) definitions.get(index - 1)))
+					clauses[count++] = clause;
+		}
+		return clauses;
+	}
+
+	/**
+	 * Returns the number of variables in {@link #getClauses()}, including auxiliary variables.
+	 */
+	int getVariableCount() {
+		return definitions.size();
+	}
+
+	/**
+	 * Returns a new SAT solver with the given clauses, or null if they are unsatisfiable at the top level.
+	 */
+	static ISolver newSolver(int variableCount, int[][] clauses) {
+		ISolver solver = SolverFactory.newDefault();
+		solver.newVar(variableCount);
+		try {
+			for (int[] clause : clauses)
+				solver.addClause(new VecInt(clause));
+		} catch (ContradictionException e) {
+			return null;
+		}
+		return solver;
+	}
+
+	/**
+	 * Returns a slicer that holds the clauses of the CNF in the order they are written, and projects away all variables not listed in the directory,
+	 * so the CNF can be simplified with {@link Slicer#simplify()} and written with {@link Slicer#write} instead of {@link #write}.
+	 * Variables are numbered as in {@link #getClauses()}.
+	 */
+	Slicer toSlicer() {
+		String[] names = new String[definitions.size() + 1];
+		boolean[] removed = new boolean[definitions.size() + 1];
+		for (int index = 1; index <= definitions.size(); index++) {
+			if (definitions.get(index - 1) instanceof String)
+				names[index] = (String) definitions.get(index - 1);
+			removed[index] = !isNamed(index);
+		}
+		Slicer slicer = new Slicer(names, removed);
+		slicer.project();
+		slicer.setEquivalences(equivalences);
+		for (int[] clause : getClauses())
+			slicer.addClause(clause);
+		return slicer;
+	}
+
+	/**
+	 * Returns whether the variable with the given index is listed in the directory, that is, whether it is named and kept.
+	 */
+	private boolean isNamed(int index) {
+		Object definition = definitions.get(index - 1);
+		return definition instanceof String && (keptVariables == null || keptVariables.contains(definition));
+	}
+
+	/**
+	 * Returns the clauses that define a gate, that is, the implication from the gate to its subformula if the gate occurs positively,
+	 * and the converse implication if it occurs negatively.
+	 */
+	private int[][] getDefinition(int index, Gate gate) {
+		// a conjunction gate implies each operand, a disjunction gate is implied by each operand
+		boolean binary = gate.and ? (polarities[index] & POSITIVE) != 0 : (polarities[index] & NEGATIVE) != 0;
+		// a conjunction gate is implied by all operands, a disjunction gate implies some operand
+		boolean wide = gate.and ? (polarities[index] & NEGATIVE) != 0 : (polarities[index] & POSITIVE) != 0;
+		int gateLiteral = gate.and ? -index : index;
+		int[][] clauses = new int[(binary ? gate.literals.length : 0) + (wide ? 1 : 0)][];
+		int count = 0;
+		if (binary) {
+			for (int literal : gate.literals)
+				clauses[count++] = new int[] { gateLiteral, gate.and ? literal : -literal };
+		}
+		if (wide) {
+			int[] clause = new int[gate.literals.length + 1];
+			clause[0] = -gateLiteral;
+			for (int i = 0; i < gate.literals.length; i++)
+				clause[i + 1] = gate.and ? -gate.literals[i] : gate.literals[i];
+			clauses[count] = clause;
+		}
+		return clauses;
+	}
+
+	private static void putLiteral(OutputBuffer out, int[] numbers, int literal) throws IOException {
+		out.putInt(literal > 0 ? numbers[literal] : -numbers[-literal]);
+		out.put((byte) ' ');
+	}
+}
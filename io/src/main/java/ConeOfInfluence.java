@@ -0,0 +1,258 @@
+import org.prop4j.And;
+import org.prop4j.Literal;
+import org.prop4j.Node;
+import org.prop4j.Not;
+import org.prop4j.Or;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cone-of-influence pruning, which drops the constraints that cannot influence the kept features of a slice before any CNF is created.
+ *
+ * <p>Constraints that fix a variable (e.g., the root feature) are propagated into all other constraints first,
+ * as fixed variables do not connect the constraints they appear in (e.g., all children of the root of a .model file).
+ * The remaining constraints are grouped into the connected components of the variable-interaction graph,
+ * and only the components that contain a kept feature are sliced.
+ * The other components are existentially quantified away by the slice, so they only matter if they are unsatisfiable,
+ * which a SAT solver decides on their Tseitin transformation in linear time.
+ * If propagation yields a contradiction or the dropped components are unsatisfiable, nothing is pruned,
+ * so the slicer finds the contradiction as before.
+ */
+public class ConeOfInfluence {
+	// constants that simplified constraints are compared to by identity
+	private static final Node TRUE = new And();
+	private static final Node FALSE = new Or();
+
+	private final List<Node> constraints;
+	private final Set<String> keptVariables;
+	private final HashMap<Object, Boolean> fixed = new HashMap<>();
+	private final HashMap<Object, Integer> variableIndices = new HashMap<>();
+	private int[] parents = new int[1024];
+	private int relevantConstraints = -1;
+	private int components;
+
+	/**
+	 * Creates a pruning for the given constraints.
+	 *
+	 * @param constraints   the constraints, which may only contain negations, conjunctions, and disjunctions
+	 *                      (e.g., as returned by {@link NodeUtils#eliminateNonCNFOperators(Node, CardinalityEncoding)})
+	 * @param keptVariables the names of the variables to keep
+	 */
+	ConeOfInfluence(List<Node> constraints, Set<String> keptVariables) {
+		this.constraints = constraints;
+		this.keptVariables = keptVariables;
+	}
+
+	/**
+	 * Returns the constraints that can influence the kept variables, simplified by the fixed variables,
+	 * and a unit constraint for each kept variable that is fixed.
+	 * The result has the same solutions on the kept variables as all constraints.
+	 */
+	List<Node> prune() {
+		Node[] simplified = propagate();
+		if (simplified == null)
+			return constraints;
+
+		for (Node constraint : simplified)
+			if (constraint != TRUE)
+				unite(constraint, -1);
+		int[] keptRoots = new int[variableIndices.size()];
+		for (String variable : keptVariables)
+			if (variableIndices.containsKey(variable))
+				keptRoots[find(variableIndices.get(variable))] = 1;
+
+		List<Node> relevant = new ArrayList<>(), irrelevant = new ArrayList<>();
+		for (String variable : keptVariables)
+			if (fixed.containsKey(variable))
+				relevant.add(new Literal(variable, fixed.get(variable)));
+		for (Node constraint : simplified) {
+			if (constraint == TRUE)
+				continue;
+			if (keptRoots[find(getRepresentative(constraint))] != 0)
+				relevant.add(constraint);
+			else
+				irrelevant.add(constraint);
+		}
+		for (int variable = 0; variable < variableIndices.size(); variable++)
+			if (parents[variable] == variable)
+				components++;
+		if (!isSatisfiable(irrelevant))
+			return constraints;
+		relevantConstraints = relevant.size();
+		return relevant;
+	}
+
+	/**
+	 * Fixes all variables that are implied by a constraint alone (after simplifying it with the variables fixed so far).
+	 *
+	 * @return the simplified constraints, or null on a contradiction
+	 */
+	private Node[] propagate() {
+		Node[] simplified = new Node[constraints.size()];
+		HashMap<Object, List<Integer>> occurrences = new HashMap<>();
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		for (int i = 0; i < simplified.length; i++) {
+			simplified[i] = constraints.get(i);
+			for (Object variable : simplified[i].getUniqueVariables())
+				occurrences.computeIfAbsent(variable, v -> new ArrayList<>()).add(i);
+			queue.add(i);
+		}
+		while (!queue.isEmpty()) {
+			int i = queue.poll();
+			if (simplified[i] == TRUE)
+				continue;
+			simplified[i] = simplify(simplified[i]);
+			if (simplified[i] == FALSE)
+				return null;
+			List<Literal> units = new ArrayList<>();
+			if (!collectUnits(simplified[i], units))
+				continue;
+			simplified[i] = TRUE;
+			for (Literal unit : units) {
+				Boolean value = fixed.putIfAbsent(unit.var, unit.positive);
+				if (value != null && value != unit.positive)
+					return null;
+				if (value == null)
+					queue.addAll(occurrences.get(unit.var));
+			}
+		}
+		return simplified;
+	}
+
+	/**
+	 * Returns a constraint with all fixed variables replaced by their values, or {@link #TRUE} or {@link #FALSE} if it becomes constant.
+	 */
+	private Node simplify(Node node) {
+		if (node instanceof Literal) {
+			Boolean value = fixed.get(((Literal) node).var);
+			return value == null ? node : value == ((Literal) node).positive ? TRUE : FALSE;
+		}
+		if (node instanceof Not) {
+			Node child = simplify(node.getChildren()[0]);
+			return child == TRUE ? FALSE : child == FALSE ? TRUE : child == node.getChildren()[0] ? node : new Not(child);
+		}
+		boolean and = node instanceof And;
+		Node[] children = node.getChildren();
+		List<Node> simplifiedChildren = new ArrayList<>(children.length);
+		boolean changed = false;
+		for (Node child : children) {
+			Node simplifiedChild = simplify(child);
+			if (simplifiedChild == (and ? FALSE : TRUE))
+				return simplifiedChild;
+			changed |= simplifiedChild != child;
+			if (simplifiedChild != (and ? TRUE : FALSE))
+				simplifiedChildren.add(simplifiedChild);
+		}
+		if (simplifiedChildren.isEmpty())
+			return and ? TRUE : FALSE;
+		if (simplifiedChildren.size() == 1)
+			return simplifiedChildren.get(0);
+		if (!changed)
+			return node;
+		Node[] newChildren = simplifiedChildren.toArray(new Node[0]);
+		return and ? new And(newChildren) : new Or(newChildren);
+	}
+
+	/**
+	 * Adds the literals that a constraint fixes, if it is a literal or a conjunction of literals.
+	 *
+	 * @return whether the constraint is equivalent to the added literals
+	 */
+	private static boolean collectUnits(Node node, List<Literal> units) {
+		boolean positive = true;
+		while (node instanceof Not) {
+			node = node.getChildren()[0];
+			positive = !positive;
+		}
+		if (node instanceof Literal) {
+			units.add(new Literal(((Literal) node).var, ((Literal) node).positive == positive));
+			return true;
+		}
+		if (!(positive ? node instanceof And : node instanceof Or))
+			return false;
+		for (Node child : node.getChildren())
+			if (!collectUnits(positive ? child : new Not(child), units))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Unites the variables in a constraint with the given variable (if any) in the union-find structure.
+	 *
+	 * @return a variable in the constraint
+	 */
+	private int unite(Node node, int variable) {
+		if (node instanceof Literal) {
+			int index = getIndex(((Literal) node).var);
+			if (variable >= 0)
+				parents[find(index)] = find(variable);
+			return index;
+		}
+		for (Node child : node.getChildren())
+			variable = unite(child, variable);
+		return variable;
+	}
+
+	private int getIndex(Object variable) {
+		Integer index = variableIndices.get(variable);
+		if (index == null) {
+			index = variableIndices.size();
+			variableIndices.put(variable, index);
+			if (index == parents.length)
+				parents = Arrays.copyOf(parents, 2 * parents.length);
+			parents[index] = index;
+		}
+		return index;
+	}
+
+	private int find(int variable) {
+		while (parents[variable] != variable) {
+			parents[variable] = parents[parents[variable]];
+			variable = parents[variable];
+		}
+		return variable;
+	}
+
+	private int getRepresentative(Node node) {
+		while (!(node instanceof Literal))
+			node = node.getChildren()[0];
+		return variableIndices.get(((Literal) node).var);
+	}
+
+	/**
+	 * Returns whether the conjunction of the given constraints is satisfiable, using their Tseitin transformation.
+	 */
+	private boolean isSatisfiable(Collection<Node> nodes) {
+		if (nodes.isEmpty())
+			return true;
+		CnfWriter encoding = new CnfWriter(Collections.emptyList());
+		for (Node node : nodes)
+			encoding.addConstraint(node);
+		ISolver solver = CnfWriter.newSolver(encoding.getVariableCount(), encoding.getClauses());
+		try {
+			return solver != null && solver.isSatisfiable();
+		} catch (TimeoutException e) {
+			throw new RuntimeException("satisfiability check of pruned constraints timed out", e);
+		}
+	}
+
+	/**
+	 * Writes statistics on the pruning into a report.
+	 */
+	void report(Report report) {
+		if (relevantConstraints < 0)
+			report.println("cone of influence: kept all %d constraints, as they are contradictory", constraints.size());
+		else
+			report.println("cone of influence: kept %d of %d constraints, %d variables fixed, %d components",
+					relevantConstraints, constraints.size(), fixed.size(), components);
+	}
+}
@@ -0,0 +1,520 @@
+import de.ovgu.featureide.fm.core.analysis.cnf.CNF;
+import de.ovgu.featureide.fm.core.analysis.cnf.LiteralSet;
+import de.ovgu.featureide.fm.core.analysis.cnf.Nodes;
+import de.ovgu.featureide.fm.core.analysis.cnf.Variables;
+import de.ovgu.featureide.fm.core.base.IFeatureModel;
+import de.ovgu.featureide.fm.core.base.impl.FMFormatManager;
+import de.ovgu.featureide.fm.core.init.FMCoreLibrary;
+import de.ovgu.featureide.fm.core.init.LibraryManager;
+import de.ovgu.featureide.fm.core.io.IFeatureModelFormat;
+import de.ovgu.featureide.fm.core.io.dimacs.DIMACSFormat;
+import de.ovgu.featureide.fm.core.io.dimacs.DimacsWriter;
+import de.ovgu.featureide.fm.core.io.manager.FeatureModelIO;
+import de.ovgu.featureide.fm.core.io.manager.FeatureModelManager;
+import de.ovgu.featureide.fm.core.io.manager.SimpleFileHandler;
+import de.ovgu.featureide.fm.core.io.uvl.UVLFeatureModelFormat;
+import de.ovgu.featureide.fm.core.io.xml.XmlFeatureModelFormat;
+import de.ovgu.featureide.fm.core.job.LongRunningMethod;
+import de.ovgu.featureide.fm.core.job.LongRunningWrapper;
+import de.ovgu.featureide.fm.core.job.SliceFeatureModel;
+import org.prop4j.And;
+import org.prop4j.Implies;
+import org.prop4j.Literal;
+import org.prop4j.Node;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A single conversion of a feature-model file into another format.
+ * Takes the same arguments as the command line, so it can be run repeatedly in one JVM (e.g., by {@link Server}).
+ */
+public class Conversion {
+	static final String USAGE = "usage: java -jar io.jar [--option=value ...] [file|-] [uvl|xml|model|cnf|dimacs|sat] [feature,...]";
+
+	private static boolean initialized = false;
+
+	private final Options options;
+	private final String[] args;
+	private final CharSequence source;
+	// the equivalences collapsed by getSlicingCnf, if any
+	private Equivalences equivalences;
+
+	/**
+	 * Creates a conversion.
+	 *
+	 * @param args   the command-line arguments, including options
+	 * @param source the contents to convert if the first argument denotes standard input (e.g., {@code -.uvl}), null otherwise
+	 */
+	Conversion(String[] args, CharSequence source) {
+		this.options = new Options(args);
+		this.args = options.getArguments();
+		if (this.args.length > 3)
+			throw new RuntimeException(USAGE);
+		this.source = source;
+	}
+
+	/**
+	 * Registers FeatureIDE and our own formats. Only needed once per JVM.
+	 */
+	static synchronized void initialize() {
+		if (initialized)
+			return;
+		LibraryManager.registerLibrary(FMCoreLibrary.getInstance());
+		FMFormatManager.getInstance().addExtension(new ModelFormat());
+		FMFormatManager.getInstance().addExtension(new SatFormat());
+		initialized = true;
+	}
+
+	/**
+	 * Returns whether the given command-line arguments (including options) denote standard input.
+	 */
+	static boolean readsStandardInput(String[] args) {
+		args = new Options(args).getArguments();
+		return args.length == 0 || args[0].startsWith("-");
+	}
+
+	/**
+	 * Returns the features to keep in a slice, which is empty if the conversion does not slice.
+	 */
+	private Set<String> getKeptFeatures() {
+		if (args.length < 3)
+			return Collections.emptySet();
+		return Arrays.stream(args[2].split(","))
+				.filter(s -> !s.trim().isEmpty())
+				.collect(Collectors.toSet());
+	}
+
+	private Path getInputPath() {
+		if (!readsStandardInput(args)) {
+			Path inputPath = Paths.get(args[0]);
+			if (!inputPath.toFile().isAbsolute()) {
+				inputPath = Paths.get(".").resolve(inputPath);
+			}
+			return inputPath;
+		}
+		if (source == null)
+			throw new RuntimeException("no contents given for standard input");
+		return Paths.get(args.length > 0 ? args[0].replace("cnf", "dimacs") : "-.uvl");
+	}
+
+	/**
+	 * Returns the feature tree of a .model, DIMACS, UVL, or XML input without building a feature model, or null if that is not possible.
+	 * The detour over a feature model only costs time and memory, as most outputs only need the feature tree and the constraints.
+	 * If anything is unusual about the input, we return null to get the same result (or error) as FeatureIDE.
+	 */
+	private FeatureTree readFeatureTree(Path inputPath) {
+		String extension = SimpleFileHandler.getFileExtension(inputPath);
+		if (!extension.equals("model") && !extension.equals("dimacs") && !extension.equals("uvl") && !extension.equals("xml"))
+			return null;
+		CharSequence contents = source;
+		if (!readsStandardInput(args)) {
+			try {
+				contents = new String(Files.readAllBytes(inputPath), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		switch (extension) {
+			case "model":
+				return ModelFormat.readFeatureTree(contents);
+			case "dimacs":
+				return NodeUtils.readDimacs(contents);
+			case "uvl":
+				return new UvlReader(contents).read();
+			default:
+				return new XmlReader(contents).read();
+		}
+	}
+
+	/**
+	 * Returns the feature tree of the input, which is read by FeatureIDE if we cannot read it ourselves.
+	 */
+	private FeatureTree loadFeatureTree(Path inputPath) {
+		FeatureTree featureTree = readFeatureTree(inputPath);
+		return featureTree != null ? featureTree : FeatureTree.of(loadFeatureModel(inputPath));
+	}
+
+	/**
+	 * Returns the output format, which is .sat if none is given.
+	 */
+	private String getFormat() {
+		return args.length < 2 ? "sat" : args[1];
+	}
+
+	/**
+	 * Returns whether the output is a DIMACS file with a definitional CNF transformation, which is written from nodes (see {@link #writeNodes}).
+	 */
+	private boolean isDefinitional() {
+		return (getFormat().equals("cnf") || getFormat().equals("dimacs")) && options.getCnfTransformation() != CnfTransformation.DISTRIBUTIVE;
+	}
+
+	/**
+	 * Returns whether a slice is projected while writing the nodes of the feature tree (see {@link #writeNodes}),
+	 * instead of being computed by a slicer on the CNF (see {@link #slice}).
+	 */
+	private boolean projectsNodes() {
+		return options.getSliceMode() == SliceMode.PROJECT && (getFormat().equals("sat") || isDefinitional());
+	}
+
+	/**
+	 * Runs the conversion and writes the converted file into a channel, which is not closed.
+	 * .sat files are streamed into the channel, other formats are written as a whole.
+	 *
+	 * @param channel the channel to write to
+	 * @param charset the charset for encoding the converted file
+	 */
+	void run(WritableByteChannel channel, Charset charset) throws IOException {
+		Path inputPath = getInputPath();
+		String format = getFormat();
+		boolean slices = !getKeptFeatures().isEmpty();
+		if (options.isDryRun() && !slices)
+			throw new RuntimeException("--dry-run needs features to keep");
+		if (slices && options.getSliceMode() == SliceMode.PROJECT && !options.isDryRun()
+				&& !format.equals("sat") && !format.equals("cnf") && !format.equals("dimacs"))
+			throw new RuntimeException("--slice=project needs sat, cnf, or dimacs output");
+		try (Report report = new Report(options.getReport())) {
+			if (options.isDryRun()) {
+				slice(channel, charset, report);
+				return;
+			}
+			// only UVL and XML outputs and slices of the feature tree need a feature model
+			switch (format) {
+				case "sat":
+				case "cnf":
+				case "dimacs":
+					if (slices && !projectsNodes())
+						slice(channel, charset, report);
+					else
+						writeFeatureTree(channel, charset, loadFeatureTree(inputPath), report);
+					break;
+				case "model":
+					if (slices)
+						writeFeatureModel(channel, charset, inputPath, report);
+					else
+						writeFeatureTree(channel, charset, loadFeatureTree(inputPath), report);
+					break;
+				default:
+					writeFeatureModel(channel, charset, inputPath, report);
+			}
+		}
+	}
+
+	/**
+	 * Writes a feature tree as a .sat, .model, or DIMACS file, as FeatureIDE writes the feature model it describes.
+	 */
+	private void writeFeatureTree(WritableByteChannel channel, Charset charset, FeatureTree featureTree, Report report) throws IOException {
+		String format = getFormat();
+		Simplification simplification = new Simplification(options, report);
+		// a feature tree is only written for a slice if it is projected (see projectsNodes)
+		boolean projects = !getKeptFeatures().isEmpty();
+		if (format.equals("sat") && !simplification.isRequested() && !projects) {
+			// the formulas of the tree are written as they are, so no nodes are needed
+			new SatWriter(featureTree.getFormulaArena(), featureTree.getFormulas(), options.getCardinalityEncoding())
+					.write(channel, charset);
+			return;
+		}
+		if (format.equals("sat") || isDefinitional()) {
+			writeNodes(channel, charset, featureTree.getNodes(), featureTree.getConstraintCount(), simplification, report);
+			return;
+		}
+		if (options.isRedundancyRemoved())
+			featureTree = simplification.removeRedundantConstraints(featureTree);
+		if (format.equals("model"))
+			write(channel, charset, new ModelFormat(options.getCardinalityEncoding()).write(featureTree));
+		else
+			writeDimacs(channel, charset, featureTree, simplification, report);
+	}
+
+	/**
+	 * Writes the input as a UVL, XML, or .model file, which is read into a feature model and sliced by FeatureIDE, if so requested.
+	 */
+	private void writeFeatureModel(WritableByteChannel channel, Charset charset, Path inputPath, Report report) throws IOException {
+		IFeatureModelFormat format;
+		switch (getFormat()) {
+			case "uvl":
+				format = new UVLFeatureModelFormat();
+				break;
+			case "xml":
+				format = new XmlFeatureModelFormat();
+				break;
+			case "model":
+				format = new ModelFormat(options.getCardinalityEncoding());
+				break;
+			default:
+				throw new RuntimeException("invalid format");
+		}
+		IFeatureModel featureModel = loadFeatureModel(inputPath);
+		if (!getKeptFeatures().isEmpty()) {
+			final LongRunningMethod<IFeatureModel> method = new SliceFeatureModel(featureModel, getKeptFeatures(), true, false);
+			featureModel = LongRunningWrapper.runMethod(method);
+			if (featureModel.getStructure().getRoot().getChildren().size() == 1) {
+				featureModel.getStructure().replaceRoot(featureModel.getStructure().getRoot().removeLastChild());
+			}
+		}
+		if (options.isRedundancyRemoved())
+			new Simplification(options, report).removeRedundantConstraints(featureModel);
+		write(channel, charset, format.getInstance().write(featureModel));
+	}
+
+	private IFeatureModel loadFeatureModel(Path inputPath) {
+		IFeatureModel featureModel;
+		if (!readsStandardInput(args)) {
+			featureModel = FeatureModelManager.load(inputPath);
+		} else {
+			featureModel = FeatureModelIO.getInstance().loadFromSource(source, inputPath);
+		}
+		if (featureModel == null)
+			throw new RuntimeException("failed to load feature model");
+		return featureModel;
+	}
+
+	/**
+	 * Slices the input into a DIMACS or .sat file by eliminating (or projecting away) the removed features from its CNF,
+	 * or plans the elimination for a dry run.
+	 * Unlike FeatureIDE's SliceFeatureModel, no feature tree is reconstructed for the slice.
+	 */
+	private void slice(WritableByteChannel channel, Charset charset, Report report) throws IOException {
+		CNF cnf = getSlicingCnf(report);
+		if (options.isDryRun()) {
+			plan(cnf).write(channel, charset);
+			return;
+		}
+		Slicer slicer = createSlicer(cnf);
+		slicer.setEquivalences(equivalences);
+		if (options.getSliceMode() != SliceMode.PROJECT)
+			eliminate(slicer);
+		if (options.isPreprocessed())
+			slicer.simplify();
+		slicer.report(report, cnf.getClauses().size());
+		if (getFormat().equals("sat"))
+			writeSat(channel, charset, slicer.getSlicedCnf(), slicer.getFallbackNote());
+		else
+			slicer.write(channel, charset);
+	}
+
+	/**
+	 * Streams a sliced CNF into a channel as a .sat file, with one disjunction per clause.
+	 * All kept features are listed in the directory, even if they are unconstrained, as in a sliced DIMACS file.
+	 * Removed features that are projected away (e.g., after exceeding the budget for slicing) are written as auxiliary variables.
+	 *
+	 * @param note a note on the fallback of the slice, written as a comment, or null for none
+	 */
+	private void writeSat(WritableByteChannel channel, Charset charset, CNF cnf, String note) throws IOException {
+		List<Node> nodes = new ArrayList<>(cnf.getClauses().size());
+		for (LiteralSet clause : cnf.getClauses()) {
+			if (clause.isEmpty()) {
+				// an empty disjunction cannot be written, so we write a contradiction
+				AuxiliaryVariable variable = new AuxiliaryVariable();
+				nodes = new ArrayList<>(Arrays.asList(new Literal(variable), new Literal(variable, false)));
+				break;
+			}
+			nodes.add(Nodes.convert(cnf.getVariables(), clause));
+		}
+		List<String> names = Arrays.asList(cnf.getVariables().getNames()).subList(1, cnf.getVariables().getNames().length);
+		SatWriter satWriter = new SatWriter(nodes, options.getCardinalityEncoding(), getKeptFeatures(), names);
+		satWriter.setEquivalences(equivalences);
+		satWriter.setNote(note);
+		satWriter.write(channel, charset);
+	}
+
+	/**
+	 * Returns the CNF of the input to slice, which only contains the constraints in the cone of influence of the kept features,
+	 * but all kept features (even if they are not constrained at all).
+	 * Equivalent features are collapsed if so requested, preferring kept features as representatives.
+	 */
+	CNF getSlicingCnf(Report report) {
+		Path inputPath = getInputPath();
+		FeatureTree featureTree = loadFeatureTree(inputPath);
+		Simplification simplification = new Simplification(options, report);
+		if (options.isRedundancyRemoved())
+			featureTree = simplification.removeRedundantConstraints(featureTree);
+		List<Node> nodes = featureTree.getNodes();
+		Set<String> features = getKeptFeatures();
+		Set<String> names = Simplification.getNames(nodes);
+		List<Node> relevantNodes = simplification.apply(nodes, CardinalityEncoding.PAIRWISE, names, features);
+		equivalences = simplification.getEquivalences();
+		Set<String> relevantNames = new HashSet<>();
+		for (Node node : relevantNodes)
+			relevantNames.addAll(node.getUniqueContainedFeatures());
+		// keep free kept features, so they are still part of the slice
+		names.removeIf(name -> !features.contains(name) && !relevantNames.contains(name));
+		Variables variables = new Variables(names);
+		List<LiteralSet> clauses = new ArrayList<>();
+		for (Node node : relevantNodes)
+			clauses.addAll(Nodes.convert(variables, node));
+		return new CNF(variables, clauses);
+	}
+
+	/**
+	 * Returns a slicer that removes all but the kept features from a CNF, in the order planned by the chosen heuristic.
+	 * The CNF is not sliced yet, but projected away if so requested.
+	 * Elimination is limited by the time and memory budgets given as options, if any.
+	 */
+	Slicer createSlicer(CNF cnf) {
+		Slicer slicer = new Slicer(cnf.getVariables().getNames(), getRemovedFeatures(cnf));
+		if (options.getSliceMode() == SliceMode.PROJECT) {
+			slicer.project();
+		} else if (options.getEliminationHeuristic() != EliminationHeuristic.GROWTH) {
+			slicer.setOrder(plan(cnf).plan());
+		}
+		slicer.setBudget(TimeUnit.SECONDS.toNanos(options.getSliceTime()), (long) options.getSliceMemory() << 20);
+		for (LiteralSet clause : cnf.getClauses())
+			slicer.addClause(clause.getLiterals());
+		return slicer;
+	}
+
+	/**
+	 * Eliminates the removed features with a slicer returned by {@link #createSlicer}.
+	 * If the budget is exceeded, the slicer projects away the features not eliminated yet, which only projected model counters count correctly,
+	 * so this fails if so requested (see {@link SliceFallback}).
+	 */
+	void eliminate(Slicer slicer) {
+		slicer.slice();
+		if (slicer.getExhaustedBudget() != null && options.getSliceFallback() == SliceFallback.FAIL)
+			throw new RuntimeException("slicing exceeded the " + slicer.getExhaustedBudget()
+					+ " budget, use --slice-fallback=project to project away the features not eliminated yet");
+	}
+
+	private EliminationPlanner plan(CNF cnf) {
+		EliminationPlanner planner = new EliminationPlanner(cnf.getVariables().getNames(), getRemovedFeatures(cnf),
+				options.getEliminationHeuristic());
+		for (LiteralSet clause : cnf.getClauses())
+			planner.addClause(clause.getLiterals());
+		return planner;
+	}
+
+	private List<String> getRemovedFeatures(CNF cnf) {
+		Set<String> features = getKeptFeatures();
+		List<String> removedFeatures = new ArrayList<>();
+		for (String name : cnf.getVariables().getNames())
+			if (name != null && !features.contains(name))
+				removedFeatures.add(name);
+		return removedFeatures;
+	}
+
+	/**
+	 * Streams the given nodes into a channel as a .sat file, or as a DIMACS file with a definitional CNF transformation.
+	 * For a projected slice, constraints outside the cone of influence of the kept features are dropped,
+	 * and all variables except the kept features are written as auxiliary variables.
+	 * Collapsed equivalent features are listed after their representatives.
+	 *
+	 * @param constraintCount the number of cross-tree constraints, which are the last nodes (see {@link Simplification#removeRedundantConstraints(List, int)})
+	 */
+	private void writeNodes(WritableByteChannel channel, Charset charset, List<Node> nodes, int constraintCount, Simplification simplification,
+			Report report) throws IOException {
+		Set<String> keptVariables = getKeptFeatures();
+		if (keptVariables.isEmpty() || options.getSliceMode() != SliceMode.PROJECT)
+			keptVariables = null;
+		boolean sat = getFormat().equals("sat");
+		if (!sat)
+			omitDummyRoot(nodes);
+		// variables that removing redundant constraints, the backbone, or collapsing makes unconstrained are listed all the same
+		Set<String> names = simplification.isRequested() ? Simplification.getNames(nodes) : new LinkedHashSet<>();
+		if (options.isRedundancyRemoved())
+			simplification.removeRedundantConstraints(nodes, nodes.size() - constraintCount);
+		nodes = simplification.apply(nodes, options.getCardinalityEncoding(), names, keptVariables);
+		Equivalences equivalences = simplification.getEquivalences();
+		List<String> variables = new ArrayList<>();
+		for (String name : names)
+			if (keptVariables == null || keptVariables.contains(name))
+				variables.add(name);
+		if (sat) {
+			SatWriter satWriter = new SatWriter(nodes, options.getCardinalityEncoding(), keptVariables, variables);
+			satWriter.setEquivalences(equivalences);
+			satWriter.write(channel, charset);
+		} else {
+			CnfWriter cnfWriter = new CnfWriter(nodes, options, report, keptVariables, variables);
+			cnfWriter.setEquivalences(equivalences);
+			if (options.isPreprocessed()) {
+				Slicer slicer = cnfWriter.toSlicer();
+				slicer.simplify();
+				slicer.report(report, cnfWriter.getClauseCount());
+				slicer.write(channel, charset);
+			} else {
+				cnfWriter.write(channel, charset);
+			}
+		}
+	}
+
+	/**
+	 * Writes the CNF of a feature tree as a DIMACS file (as {@link DIMACSFormat} does for the feature model), with the backbone substituted,
+	 * equivalent features collapsed, and simplified by a slicer that removes no variables, if so requested.
+	 */
+	private void writeDimacs(WritableByteChannel channel, Charset charset, FeatureTree featureTree, Simplification simplification, Report report)
+			throws IOException {
+		List<String> names = new ArrayList<>(featureTree.getNames());
+		Node node = featureTree.getCnfNode(!names.isEmpty() && DIMACSFormat.DUMMY_ROOT_NAME.equals(names.get(0)));
+		if (!options.isPreprocessed() && !options.isBackbone() && options.getEquivalenceDetection() == EquivalenceDetection.NONE) {
+			Variables variables = new Variables(names);
+			CNF cnf = new CNF(variables);
+			cnf.addClauses(Nodes.convert(variables, node));
+			DimacsWriter dimacsWriter = new DimacsWriter(cnf);
+			dimacsWriter.setWritingVariableDirectory(true);
+			write(channel, charset, dimacsWriter.write());
+			return;
+		}
+		// the backbone and collapsing work on the clauses of the CNF, otherwise it is converted as a whole
+		List<Node> nodes = Collections.singletonList(node);
+		if (options.isBackbone() || options.getEquivalenceDetection() != EquivalenceDetection.NONE)
+			nodes = simplification.apply(new ArrayList<>(Arrays.asList(node instanceof And ? node.getChildren() : new Node[] { node })),
+					options.getCardinalityEncoding(), names, null);
+		Variables variables = new Variables(names);
+		List<LiteralSet> clauses = new ArrayList<>();
+		for (Node constraint : nodes)
+			clauses.addAll(Nodes.convert(variables, constraint));
+		Slicer slicer = new Slicer(variables.getNames(), Collections.emptyList());
+		slicer.setEquivalences(simplification.getEquivalences());
+		for (LiteralSet clause : clauses)
+			slicer.addClause(clause.getLiterals());
+		if (options.isPreprocessed())
+			slicer.simplify();
+		slicer.report(report, clauses.size());
+		slicer.write(channel, charset);
+	}
+
+	/**
+	 * Returns the number of nodes for the feature tree in the nodes of a .model or DIMACS input (see {@link FeatureTree#flat}),
+	 * that is, the root feature and the definition of its children, if any.
+	 */
+	private static int getTreeNodeCount(List<Node> nodes) {
+		return nodes.size() > 1 && nodes.get(1) instanceof Implies ? 2 : 1;
+	}
+
+	/**
+	 * Removes the nodes for the synthetic root of a feature model read from a DIMACS file, unless constraints refer to it.
+	 * Same as {@link DIMACSFormat}, which omits this root when writing.
+	 */
+	private static void omitDummyRoot(List<Node> nodes) {
+		if (nodes.isEmpty() || !(nodes.get(0) instanceof Literal) || !DIMACSFormat.DUMMY_ROOT_NAME.equals(((Literal) nodes.get(0)).var))
+			return;
+		int treeNodes = getTreeNodeCount(nodes);
+		for (Node node : nodes.subList(treeNodes, nodes.size()))
+			if (node.getContainedFeatures().contains(DIMACSFormat.DUMMY_ROOT_NAME))
+				return;
+		nodes.subList(0, treeNodes).clear();
+	}
+
+	private static void write(WritableByteChannel channel, Charset charset, String output) throws IOException {
+		if (output == null)
+			throw new RuntimeException("failed to write feature model");
+		ByteBuffer buffer = ByteBuffer.wrap(output.getBytes(charset));
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+}
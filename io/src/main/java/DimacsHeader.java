@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writer for the header of DIMACS files (i.e., comments, the variable directory, and the problem line) into an {@link OutputBuffer},
+ * as needed by {@link CnfWriter} and {@link Slicer} (and for the variable directory, by {@link SatWriter}).
+ *
+ * <p>Named variables are numbered first and listed as {@code c i name}, followed by their equivalent features, if any (see {@link Equivalences#write}).
+ * All other variables are marked as {@code c aux i}, which is no entry of the variable directory.
+ * So clausy reads these variables as auxiliary variables, whereas FeatureIDE reads each of them as a feature named after its number.
+ * For a projected CNF, a {@code c p show} line lists the named variables for projected model counters.
+ */
+public class DimacsHeader {
+	/**
+	 * The end of a clause, which follows its literals (each followed by a space).
+	 */
+	static final byte[] CLAUSE_END = "0\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] COMMENT = "c ".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] AUXILIARY = "c aux ".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] SHOW = "c p show ".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] PROBLEM = "p cnf ".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Writes the header of a DIMACS file.
+	 *
+	 * @param out           the buffer
+	 * @param names         the names of the named variables, in order of their numbers
+	 * @param variableCount the number of all variables, where variables after the named ones are auxiliary
+	 * @param clauseCount   the number of clauses
+	 * @param projected     whether auxiliary variables are projected away, so a {@code c p show} line is written
+	 * @param equivalences  the equivalences to list in the directory, or null for none
+	 * @param charset       the charset for encoding variable names
+	 */
+	static void write(OutputBuffer out, String[] names, int variableCount, int clauseCount, boolean projected,
+			Equivalences equivalences, Charset charset) throws IOException {
+		for (int i = 0; i < names.length; i++)
+			writeVariable(out, i + 1, names[i], equivalences, charset);
+		for (int number = names.length + 1; number <= variableCount; number++) {
+			out.put(AUXILIARY);
+			out.putInt(number);
+			out.put((byte) '\n');
+		}
+		if (projected) {
+			out.put(SHOW);
+			for (int number = 1; number <= names.length; number++) {
+				out.putInt(number);
+				out.put((byte) ' ');
+			}
+			out.put(CLAUSE_END);
+		}
+		out.put(PROBLEM);
+		out.putInt(variableCount);
+		out.put((byte) ' ');
+		out.putInt(clauseCount);
+		out.put((byte) '\n');
+	}
+
+	/**
+	 * Writes a variable of the directory as {@code c i name}, followed by its equivalent features, if any.
+	 * The same directory is used in .sat files.
+	 */
+	static void writeVariable(OutputBuffer out, int number, String name, Equivalences equivalences, Charset charset) throws IOException {
+		out.put(COMMENT);
+		out.putInt(number);
+		out.put((byte) ' ');
+		out.put(name.getBytes(charset));
+		out.put((byte) '\n');
+		if (equivalences != null)
+			equivalences.write(out, name, number, charset);
+	}
+
+	/**
+	 * Writes a comment line (e.g., a note on the fallback of a slice), which must not start with a number, so it is not read as a variable.
+	 */
+	static void writeComment(OutputBuffer out, String comment, Charset charset) throws IOException {
+		out.put(COMMENT);
+		out.put(comment.getBytes(charset));
+		out.put((byte) '\n');
+	}
+}
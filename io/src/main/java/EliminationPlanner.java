@@ -0,0 +1,447 @@
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Planner for the order in which {@link Slicer} eliminates variables, which predicts the clause growth without slicing.
+ *
+ * <p>Elimination is simulated on estimates only: the number of positive and negative occurrences of each variable,
+ * and the primal graph, whose edges connect variables that share a clause, weighted with the estimated number of shared clauses per combination of signs.
+ * Eliminating a variable replaces its clauses by the product of its positive and negative ones, minus the resolvents expected to be tautologies,
+ * and connects its neighbours that are expected to share a resolvent (i.e., adds fill edges).
+ * The occurrences of each neighbour are updated assuming that variables are spread independently over the clauses.
+ * Subsumed and otherwise redundant resolvents are not predicted, so the growth is overestimated on some formulas.
+ * The costs of the neighbours are updated after each elimination, so the order adapts to the growth predicted so far.
+ * As in the slicer, the plan ends once no removed variable shares a clause with a kept variable.
+ */
+public class EliminationPlanner {
+	// neighbourhoods larger than this are assumed to need all fill edges, so the cost of planning stays bounded
+	private static final int FILL_BUDGET = 1 << 12;
+	// fill edges are only added if the neighbours are expected to share at least this many resolvents
+	private static final double MINIMUM_SHARED = 0.5;
+	// combinations of the signs of a variable and a neighbour in a shared clause
+	private static final int SIGNS = 4;
+	// estimates are capped, as they grow exponentially on formulas that cannot be sliced
+	private static final double ESTIMATE_LIMIT = 1e18;
+
+	private final String[] names;
+	private final boolean[] removed;
+	private final int removedCount;
+	private final EliminationHeuristic heuristic;
+	private final List<int[]> clauses = new ArrayList<>();
+	// estimated occurrences of each variable
+	private final double[] positive;
+	private final double[] negative;
+	// neighbours of each variable in the primal graph, eliminated neighbours are dropped lazily,
+	// and the estimated number of shared clauses per neighbour and combination of signs (positive-positive, positive-negative, and so on)
+	private final int[][] neighbours;
+	private final double[][] shared;
+	private final int[] degrees;
+	// position of each variable in the neighbourhood being updated, -1 if none
+	private final int[] slots;
+	private final boolean[] eliminated;
+	// whether a removed variable shares a clause with a kept variable, and how many do
+	private final boolean[] bordersKept;
+	private int borderCount;
+	// removed variables that are not planned yet, as a binary min-heap ordered by cost and tie-breaking cost
+	private final int[] heap;
+	private final int[] heapPositions;
+	private final double[] costs;
+	private final double[] tieBreakingCosts;
+	private int heapSize;
+	// the planned order, with the estimates at the time each variable is eliminated
+	private final int[] order;
+	private final double[] plannedPositive;
+	private final double[] plannedNegative;
+	private final long[] plannedFill;
+	private final double[] plannedClauses;
+	private int steps;
+	private double peakClauses;
+	private boolean planned;
+
+	/**
+	 * Creates a planner for a CNF without clauses.
+	 *
+	 * @param names            the names of the variables, starting at index 1 (as returned by FeatureIDE's Variables)
+	 * @param removedVariables the names of the variables to remove, other names are ignored
+	 * @param heuristic        the heuristic for choosing the next variable to eliminate
+	 */
+	EliminationPlanner(String[] names, Collection<String> removedVariables, EliminationHeuristic heuristic) {
+		this.names = names;
+		this.heuristic = heuristic;
+		int variableCount = names.length - 1;
+		Set<String> removedSet = new HashSet<>(removedVariables);
+		removed = new boolean[variableCount + 1];
+		int count = 0;
+		for (int variable = 1; variable <= variableCount; variable++) {
+			if (removedSet.contains(names[variable])) {
+				removed[variable] = true;
+				count++;
+			}
+		}
+		removedCount = count;
+		positive = new double[variableCount + 1];
+		negative = new double[variableCount + 1];
+		neighbours = new int[variableCount + 1][];
+		shared = new double[variableCount + 1][];
+		degrees = new int[variableCount + 1];
+		slots = new int[variableCount + 1];
+		Arrays.fill(slots, -1);
+		eliminated = new boolean[variableCount + 1];
+		bordersKept = new boolean[variableCount + 1];
+		heap = new int[removedCount];
+		heapPositions = new int[variableCount + 1];
+		Arrays.fill(heapPositions, -1);
+		costs = new double[variableCount + 1];
+		tieBreakingCosts = new double[variableCount + 1];
+		order = new int[removedCount];
+		plannedPositive = new double[removedCount];
+		plannedNegative = new double[removedCount];
+		plannedFill = new long[removedCount];
+		plannedClauses = new double[removedCount];
+	}
+
+	/**
+	 * Adds a clause of the CNF to slice. Must not be called after {@link #plan()}.
+	 * Duplicate literals are ignored, and tautologies are dropped.
+	 */
+	void addClause(int[] literals) {
+		int[] clause = new int[literals.length];
+		int size = 0;
+		boolean tautology = false;
+		for (int i = 0; i < literals.length && !tautology; i++) {
+			int literal = literals[i], slot = slots[Math.abs(literal)];
+			if (slot == -1) {
+				slots[Math.abs(literal)] = literal > 0 ? 0 : 1;
+				clause[size++] = literal;
+			} else {
+				tautology = slot != (literal > 0 ? 0 : 1);
+			}
+		}
+		for (int i = 0; i < size; i++)
+			slots[Math.abs(clause[i])] = -1;
+		if (tautology)
+			return;
+		for (int i = 0; i < size; i++) {
+			if (clause[i] > 0)
+				positive[clause[i]]++;
+			else
+				negative[-clause[i]]++;
+		}
+		clauses.add(size < clause.length ? Arrays.copyOf(clause, size) : clause);
+	}
+
+	/**
+	 * Plans the elimination of the removed variables, or as many as needed to separate them from the kept variables.
+	 *
+	 * @return the variables in the order they should be eliminated
+	 */
+	int[] plan() {
+		if (!planned) {
+			buildPrimalGraph();
+			for (int variable = 1; variable < names.length; variable++) {
+				if (removed[variable]) {
+					updateCosts(variable);
+					heapPositions[variable] = heapSize;
+					heap[heapSize++] = variable;
+					siftUp(heapPositions[variable]);
+				}
+			}
+			double clauseCount = clauses.size();
+			peakClauses = clauseCount;
+			while (heapSize > 0 && borderCount > 0) {
+				int variable = popHeap();
+				order[steps] = variable;
+				plannedPositive[steps] = positive[variable];
+				plannedNegative[steps] = negative[variable];
+				plannedFill[steps] = getFill(variable);
+				clauseCount = Math.min(clauseCount + getGrowth(variable), ESTIMATE_LIMIT);
+				plannedClauses[steps++] = clauseCount;
+				peakClauses = Math.max(peakClauses, clauseCount);
+				eliminate(variable);
+			}
+			planned = true;
+		}
+		return Arrays.copyOf(order, steps);
+	}
+
+	/**
+	 * Connects all variables that share a clause, weighted with the number of clauses they share per combination of signs.
+	 */
+	private void buildPrimalGraph() {
+		int[][] clausesOfVariable = new int[names.length][];
+		int[] clauseCounts = new int[names.length];
+		for (int[] clause : clauses)
+			for (int literal : clause)
+				clauseCounts[Math.abs(literal)]++;
+		for (int variable = 1; variable < names.length; variable++)
+			clausesOfVariable[variable] = new int[clauseCounts[variable]];
+		Arrays.fill(clauseCounts, 0);
+		for (int i = 0; i < clauses.size(); i++)
+			for (int literal : clauses.get(i))
+				clausesOfVariable[Math.abs(literal)][clauseCounts[Math.abs(literal)]++] = i;
+
+		for (int variable = 1; variable < names.length; variable++) {
+			neighbours[variable] = new int[4];
+			shared[variable] = new double[4 * SIGNS];
+			for (int i : clausesOfVariable[variable]) {
+				int sign = 0;
+				for (int literal : clauses.get(i))
+					if (Math.abs(literal) == variable)
+						sign = sign(literal);
+				for (int literal : clauses.get(i)) {
+					int neighbour = Math.abs(literal);
+					if (neighbour == variable)
+						continue;
+					if (slots[neighbour] < 0)
+						slots[neighbour] = addNeighbour(variable, neighbour);
+					shared[variable][slots[neighbour] * SIGNS + 2 * sign + sign(literal)]++;
+				}
+			}
+			clearSlots(variable);
+		}
+	}
+
+	private static int sign(int literal) {
+		return literal > 0 ? 0 : 1;
+	}
+
+	private int addNeighbour(int variable, int neighbour) {
+		if (degrees[variable] == neighbours[variable].length) {
+			neighbours[variable] = Arrays.copyOf(neighbours[variable], 2 * degrees[variable]);
+			shared[variable] = Arrays.copyOf(shared[variable], 2 * degrees[variable] * SIGNS);
+		}
+		neighbours[variable][degrees[variable]] = neighbour;
+		Arrays.fill(shared[variable], degrees[variable] * SIGNS, (degrees[variable] + 1) * SIGNS, 0);
+		if (removed[variable] && !removed[neighbour] && !bordersKept[variable]) {
+			bordersKept[variable] = true;
+			borderCount++;
+		}
+		return degrees[variable]++;
+	}
+
+	private void clearSlots(int variable) {
+		for (int i = 0; i < degrees[variable]; i++)
+			slots[neighbours[variable][i]] = -1;
+	}
+
+	/**
+	 * Removes eliminated variables from a neighbourhood.
+	 */
+	private void compactNeighbours(int variable) {
+		int degree = 0;
+		for (int i = 0; i < degrees[variable]; i++) {
+			if (!eliminated[neighbours[variable][i]]) {
+				neighbours[variable][degree] = neighbours[variable][i];
+				System.arraycopy(shared[variable], i * SIGNS, shared[variable], degree * SIGNS, SIGNS);
+				degree++;
+			}
+		}
+		degrees[variable] = degree;
+	}
+
+	/**
+	 * Returns the fraction of the clauses of a variable with the given sign that contain a neighbour with the given sign.
+	 */
+	private double getFraction(int variable, int slot, int sign, int neighbourSign) {
+		double occurrences = sign == 0 ? positive[variable] : negative[variable];
+		return occurrences > 0 ? Math.min(1, shared[variable][slot * SIGNS + 2 * sign + neighbourSign] / occurrences) : 0;
+	}
+
+	/**
+	 * Returns the estimated number of resolvents on a variable that are no tautologies.
+	 * A resolvent is a tautology if a neighbour occurs with opposite signs in the two resolved clauses.
+	 */
+	private double getResolvents(int variable) {
+		compactNeighbours(variable);
+		double resolvents = Math.min(positive[variable] * negative[variable], ESTIMATE_LIMIT);
+		for (int i = 0; i < degrees[variable] && resolvents > 0; i++) {
+			double tautologies = getFraction(variable, i, 0, 0) * getFraction(variable, i, 1, 1)
+					+ getFraction(variable, i, 0, 1) * getFraction(variable, i, 1, 0);
+			resolvents *= 1 - Math.min(1, tautologies);
+		}
+		return resolvents;
+	}
+
+	/**
+	 * Returns the estimated number of clauses that eliminating a variable adds.
+	 */
+	private double getGrowth(int variable) {
+		return getResolvents(variable) - positive[variable] - negative[variable];
+	}
+
+	/**
+	 * Returns how many edges eliminating a variable adds to the primal graph (at most, for large neighbourhoods).
+	 */
+	private long getFill(int variable) {
+		compactNeighbours(variable);
+		int degree = degrees[variable];
+		long pairs = (long) degree * (degree - 1) / 2;
+		long work = 0;
+		for (int i = 0; i < degree && work <= FILL_BUDGET; i++)
+			work += degrees[neighbours[variable][i]];
+		if (work > FILL_BUDGET)
+			return pairs;
+		for (int i = 0; i < degree; i++)
+			slots[neighbours[variable][i]] = i;
+		long edges = 0;
+		for (int i = 0; i < degree; i++) {
+			int neighbour = neighbours[variable][i];
+			for (int j = 0; j < degrees[neighbour]; j++)
+				if (slots[neighbours[neighbour][j]] >= 0)
+					edges++;
+		}
+		clearSlots(variable);
+		return pairs - edges / 2;
+	}
+
+	/**
+	 * Simulates the elimination of a variable on the estimated occurrences and the primal graph.
+	 * A neighbour with a given sign is expected in a resolvent with the probability that it occurs in at least one of the two resolved clauses.
+	 */
+	private void eliminate(int variable) {
+		double resolvents = getResolvents(variable);
+		eliminated[variable] = true;
+		if (bordersKept[variable])
+			borderCount--;
+		int degree = degrees[variable];
+		int[] variableNeighbours = neighbours[variable];
+		double[] variableShared = shared[variable];
+		// fractions of the positive and negative clauses that contain each neighbour with each sign
+		double[] fractions = new double[degree * SIGNS];
+		// probabilities that a resolvent contains each neighbour with each sign
+		double[] probabilities = new double[degree * 2];
+		for (int i = 0; i < degree; i++) {
+			for (int sign = 0; sign < SIGNS; sign++)
+				fractions[i * SIGNS + sign] = getFraction(variable, i, sign / 2, sign % 2);
+			for (int sign = 0; sign < 2; sign++)
+				probabilities[2 * i + sign] = 1 - (1 - fractions[i * SIGNS + sign]) * (1 - fractions[i * SIGNS + 2 + sign]);
+		}
+
+		double[] sharedChanges = new double[SIGNS];
+		for (int i = 0; i < degree; i++) {
+			int neighbour = variableNeighbours[i];
+			compactNeighbours(neighbour);
+			for (int j = 0; j < degrees[neighbour]; j++)
+				slots[neighbours[neighbour][j]] = j;
+			positive[neighbour] = limit(positive[neighbour] + resolvents * probabilities[2 * i] - variableShared[i * SIGNS] - variableShared[i * SIGNS + 2]);
+			negative[neighbour] = limit(negative[neighbour] + resolvents * probabilities[2 * i + 1] - variableShared[i * SIGNS + 1] - variableShared[i * SIGNS + 3]);
+			for (int j = 0; j < degree; j++) {
+				if (j == i)
+					continue;
+				int other = variableNeighbours[j];
+				double total = 0;
+				for (int sign = 0; sign < SIGNS; sign++) {
+					int neighbourSign = sign / 2, otherSign = sign % 2;
+					// the clauses of the variable that contain both are estimated from the fractions, as only pairs are counted
+					sharedChanges[sign] = resolvents * probabilities[2 * i + neighbourSign] * probabilities[2 * j + otherSign]
+							- positive[variable] * fractions[i * SIGNS + neighbourSign] * fractions[j * SIGNS + otherSign]
+							- negative[variable] * fractions[i * SIGNS + 2 + neighbourSign] * fractions[j * SIGNS + 2 + otherSign];
+					total += sharedChanges[sign];
+				}
+				if (slots[other] < 0 && total < MINIMUM_SHARED)
+					continue;
+				if (slots[other] < 0)
+					slots[other] = addNeighbour(neighbour, other);
+				for (int sign = 0; sign < SIGNS; sign++)
+					shared[neighbour][slots[other] * SIGNS + sign] = limit(shared[neighbour][slots[other] * SIGNS + sign] + sharedChanges[sign]);
+			}
+			clearSlots(neighbour);
+		}
+
+		for (int i = 0; i < degree; i++) {
+			int neighbour = variableNeighbours[i];
+			if (heapPositions[neighbour] >= 0) {
+				updateCosts(neighbour);
+				siftUp(heapPositions[neighbour]);
+				siftDown(heapPositions[neighbour]);
+			}
+		}
+	}
+
+	private static double limit(double estimate) {
+		return Math.max(0, Math.min(estimate, ESTIMATE_LIMIT));
+	}
+
+	private void updateCosts(int variable) {
+		if (heuristic == EliminationHeuristic.MIN_FILL) {
+			costs[variable] = getFill(variable);
+			tieBreakingCosts[variable] = getGrowth(variable);
+		} else {
+			costs[variable] = getGrowth(variable);
+		}
+	}
+
+	private boolean isCheaper(int variable, int other) {
+		if (costs[variable] != costs[other])
+			return costs[variable] < costs[other];
+		if (tieBreakingCosts[variable] != tieBreakingCosts[other])
+			return tieBreakingCosts[variable] < tieBreakingCosts[other];
+		return variable < other;
+	}
+
+	private int popHeap() {
+		int variable = heap[0];
+		heapPositions[variable] = -1;
+		if (--heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPositions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return variable;
+	}
+
+	private void siftUp(int position) {
+		int variable = heap[position];
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			if (!isCheaper(variable, heap[parent]))
+				break;
+			heap[position] = heap[parent];
+			heapPositions[heap[position]] = position;
+			position = parent;
+		}
+		heap[position] = variable;
+		heapPositions[variable] = position;
+	}
+
+	private void siftDown(int position) {
+		int variable = heap[position];
+		while (2 * position + 1 < heapSize) {
+			int child = 2 * position + 1;
+			if (child + 1 < heapSize && isCheaper(heap[child + 1], heap[child]))
+				child++;
+			if (!isCheaper(heap[child], variable))
+				break;
+			heap[position] = heap[child];
+			heapPositions[heap[position]] = position;
+			position = child;
+		}
+		heap[position] = variable;
+		heapPositions[variable] = position;
+	}
+
+	/**
+	 * Writes the planned order into a channel, one line per eliminated variable with the estimates at that point,
+	 * followed by a summary of the predicted clause growth. The channel is not closed.
+	 */
+	void write(WritableByteChannel channel, Charset charset) throws IOException {
+		plan();
+		OutputBuffer out = new OutputBuffer(channel);
+		for (int step = 0; step < steps; step++) {
+			out.put(String.format(Locale.ROOT, "eliminate %s: %.0f positive and %.0f negative occurrences, %d fill edges, %.0f clauses after%n",
+					names[order[step]], plannedPositive[step], plannedNegative[step], plannedFill[step], plannedClauses[step]).getBytes(charset));
+		}
+		out.put(String.format(Locale.ROOT, "%s plan eliminates %d of %d removed variables, predicting %.0f clauses before, %.0f after, %.0f at peak%n",
+				heuristic, steps, removedCount, (double) clauses.size(), steps > 0 ? plannedClauses[steps - 1] : clauses.size(), peakClauses)
+				.getBytes(charset));
+		out.flush();
+	}
+}
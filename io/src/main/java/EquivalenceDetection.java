@@ -0,0 +1,26 @@
+/**
+ * Methods for detecting equivalent features (see {@link Equivalences}), which are collapsed into one representative variable.
+ */
+public enum EquivalenceDetection {
+	/**
+	 * Detects no equivalences, so every feature keeps its own variable.
+	 */
+	NONE,
+	/**
+	 * Detects the equivalences that follow from binary clauses alone (e.g., mandatory features and their parents),
+	 * as the strongly connected components of the implication graph. This takes linear time.
+	 */
+	STRUCTURAL,
+	/**
+	 * Detects the structural equivalences, and additionally all equivalences of the remaining variables,
+	 * which are proposed by random solutions and confirmed by a SAT solver.
+	 */
+	SAT;
+
+	static EquivalenceDetection parse(String name) {
+		for (EquivalenceDetection detection : values())
+			if (detection.name().equalsIgnoreCase(name))
+				return detection;
+		throw new RuntimeException("invalid equivalence detection " + name);
+	}
+}
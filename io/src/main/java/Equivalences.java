@@ -0,0 +1,517 @@
+import org.prop4j.And;
+import org.prop4j.Literal;
+import org.prop4j.Node;
+import org.prop4j.Not;
+import org.prop4j.Or;
+import org.sat4j.minisat.core.ICDCL;
+import org.sat4j.core.LiteralsUtils;
+import org.sat4j.specs.ISolver;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Detection of equivalent features, which collapses each class of equivalent (or complementary) features into one representative variable.
+ *
+ * <p>Structural equivalences follow from the binary clauses of the constraints alone, which the encoding of a feature tree
+ * is full of (e.g., a mandatory feature and its parent imply each other). They are the strongly connected components
+ * of the implication graph of these clauses, which Tarjan's algorithm finds in linear time.
+ * Optionally, the remaining variables are grouped by their values in random solutions of the Tseitin transformation
+ * (as in {@link Backbone}), and each proposed equivalence is confirmed by a SAT solver.
+ * Members of a class are replaced by their representative in all constraints, so they are not written at all;
+ * instead, writers list them in the variable directory as {@code c eq <literal> <name>}, where the literal is the number of
+ * the representative, negated for complementary members. Such comments are ignored by clausy and FeatureIDE.
+ * If the equivalences contradict each other, the constraints are unsatisfiable, so they are returned as they are instead of collapsed.
+ */
+public class Equivalences {
+	/**
+	 * Number of random solutions that propose equivalences, one bit of a signature each.
+	 */
+	private static final int SOLUTIONS = Long.SIZE;
+	/**
+	 * Maximum number of binary clauses taken from a single disjunction of two conjunctions.
+	 */
+	private static final int PAIR_LIMIT = 1 << 10;
+	private static final long SEED = 0;
+	private static final byte[] EQUIVALENCE = "c eq ".getBytes(StandardCharsets.US_ASCII);
+	// constants that substituted constraints are compared to by identity
+	private static final Node TRUE = new And();
+	private static final Node FALSE = new Or();
+
+	/**
+	 * Phase selection that assigns each variable a random value, so subsequent solutions differ.
+	 */
+	private static final class RandomPhaseSelection extends PhaseSelection {
+		private final Random random = new Random(SEED);
+
+		@Override
+		public int select(int variable) {
+			return random.nextBoolean() ? LiteralsUtils.posLit(variable) : LiteralsUtils.negLit(variable);
+		}
+	}
+
+	private final List<Node> constraints;
+	private final Set<String> keptVariables;
+	private final LinkedHashMap<String, Integer> variableIndices = new LinkedHashMap<>();
+	private final List<String> variables = new ArrayList<>();
+	// union-find structure over variables, where each variable is equivalent to its parent, or complementary if its parity is set
+	private int[] parents;
+	private boolean[] parities;
+	private final LinkedHashMap<String, List<Literal>> members = new LinkedHashMap<>();
+	private final HashMap<String, Literal> substitution = new HashMap<>();
+	private boolean contradictory;
+	private int structuralMembers;
+	private int solverCalls;
+
+	/**
+	 * Creates a detection of equivalent features in the given constraints.
+	 *
+	 * @param constraints   the constraints, which may only contain negations, conjunctions, and disjunctions
+	 *                      (e.g., as returned by {@link NodeUtils#eliminateNonCNFOperators(Node, CardinalityEncoding)})
+	 * @param keptVariables the names of the variables that are preferred as representatives and listed with their members, or null for all
+	 */
+	Equivalences(List<Node> constraints, Set<String> keptVariables) {
+		this.constraints = constraints;
+		this.keptVariables = keptVariables;
+		for (Node constraint : constraints)
+			addVariables(constraint);
+		parents = new int[variables.size()];
+		parities = new boolean[variables.size()];
+		for (int variable = 0; variable < parents.length; variable++)
+			parents[variable] = variable;
+	}
+
+	private void addVariables(Node node) {
+		if (node instanceof Literal) {
+			if (((Literal) node).var instanceof String && !variableIndices.containsKey(((Literal) node).var)) {
+				variableIndices.put((String) ((Literal) node).var, variables.size());
+				variables.add((String) ((Literal) node).var);
+			}
+		} else {
+			for (Node child : node.getChildren())
+				addVariables(child);
+		}
+	}
+
+	/**
+	 * Returns the constraints with each member of a class of equivalent features replaced by its representative.
+	 * Constraints that become tautologies (e.g., the equivalences themselves) or repeat a unit constraint are dropped.
+	 *
+	 * @param detection the method for detecting equivalences
+	 */
+	List<Node> collapse(EquivalenceDetection detection) {
+		if (detection == EquivalenceDetection.NONE)
+			return constraints;
+		List<int[]> clauses = new ArrayList<>();
+		for (Node constraint : constraints)
+			addBinaryClauses(constraint, true, clauses);
+		findStructuralEquivalences(clauses);
+		structuralMembers = countMembers();
+		if (!contradictory && detection == EquivalenceDetection.SAT)
+			findSatEquivalences();
+		if (contradictory)
+			return constraints;
+		chooseRepresentatives();
+		if (substitution.isEmpty())
+			return constraints;
+
+		List<Node> collapsed = new ArrayList<>(constraints.size());
+		HashMap<Object, Boolean> units = new HashMap<>();
+		for (Node constraint : constraints) {
+			Node node = substitute(constraint);
+			if (node == FALSE) {
+				contradictory = true;
+				members.clear();
+				substitution.clear();
+				return constraints;
+			}
+			if (node == TRUE)
+				continue;
+			// a constraint may collapse into a unit that is already given (e.g., the group of the root into the root itself)
+			if (node instanceof Literal) {
+				Boolean positive = units.putIfAbsent(((Literal) node).var, ((Literal) node).positive);
+				if (node != constraint && positive != null && positive == ((Literal) node).positive)
+					continue;
+			}
+			collapsed.add(node);
+		}
+		return collapsed;
+	}
+
+	/**
+	 * Adds the binary clauses of a constraint (or its negation, if not positive), as pairs of literals (see {@link #addLiterals}).
+	 * Besides disjunctions of two literals, this includes the binary clauses of a disjunction of two conjunctions of literals
+	 * (e.g., {@code -(a | b) | p}, which relates the children of a group to their parent), up to a limited number of pairs.
+	 * Negations are pushed down, so a negated conjunction counts as a disjunction (e.g., {@code -(a & b)} as {@code -a | -b}),
+	 * and a negated disjunction as a conjunction.
+	 */
+	private void addBinaryClauses(Node node, boolean positive, List<int[]> clauses) {
+		while (node instanceof Not) {
+			node = node.getChildren()[0];
+			positive = !positive;
+		}
+		if (positive ? node instanceof And : node instanceof Or) {
+			for (Node child : node.getChildren())
+				addBinaryClauses(child, positive, clauses);
+		} else if ((positive ? node instanceof Or : node instanceof And) && node.getChildren().length == 2) {
+			List<Integer> first = new ArrayList<>(), second = new ArrayList<>();
+			if (!addLiterals(node.getChildren()[0], positive, first) || !addLiterals(node.getChildren()[1], positive, second)
+					|| first.size() * second.size() > PAIR_LIMIT)
+				return;
+			for (int literal : first)
+				for (int other : second)
+					clauses.add(new int[] { literal, other });
+		}
+	}
+
+	/**
+	 * Adds the nodes in the implication graph for a literal or a conjunction of literals (i.e., twice its variable, plus one if negative).
+	 *
+	 * @return whether the node is a literal of a feature or a conjunction of such literals
+	 */
+	private boolean addLiterals(Node node, boolean positive, List<Integer> literals) {
+		while (node instanceof Not) {
+			node = node.getChildren()[0];
+			positive = !positive;
+		}
+		if (node instanceof Literal) {
+			if (!(((Literal) node).var instanceof String))
+				return false;
+			literals.add(2 * variableIndices.get(((Literal) node).var) + (((Literal) node).positive == positive ? 0 : 1));
+			return true;
+		}
+		if (!(positive ? node instanceof And : node instanceof Or) || literals.size() + node.getChildren().length > PAIR_LIMIT)
+			return false;
+		for (Node child : node.getChildren())
+			if (!addLiterals(child, positive, literals))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Unites the literals in each strongly connected component of the implication graph of the given binary clauses,
+	 * where each clause {@code a | b} has the edges {@code -a -> b} and {@code -b -> a}.
+	 * Uses Tarjan's algorithm with an explicit stack, as the feature tree may be deeper than the call stack.
+	 */
+	private void findStructuralEquivalences(List<int[]> clauses) {
+		int nodes = 2 * variables.size();
+		int[] starts = new int[nodes + 1];
+		for (int[] clause : clauses) {
+			starts[clause[0] ^ 1]++;
+			starts[clause[1] ^ 1]++;
+		}
+		for (int node = 0; node < nodes; node++)
+			starts[node + 1] += starts[node];
+		int[] edges = new int[starts[nodes]];
+		for (int[] clause : clauses) {
+			edges[--starts[clause[0] ^ 1]] = clause[1];
+			edges[--starts[clause[1] ^ 1]] = clause[0];
+		}
+
+		int[] indices = new int[nodes], lowLinks = new int[nodes], nextEdges = new int[nodes];
+		Arrays.fill(indices, -1);
+		boolean[] onStack = new boolean[nodes];
+		int[] stack = new int[nodes], calls = new int[nodes];
+		int stackSize = 0, index = 0;
+		for (int root = 0; root < nodes; root++) {
+			if (indices[root] >= 0)
+				continue;
+			int callCount = 0;
+			calls[callCount++] = root;
+			indices[root] = lowLinks[root] = index++;
+			nextEdges[root] = starts[root];
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			while (callCount > 0) {
+				int node = calls[callCount - 1];
+				if (nextEdges[node] < starts[node + 1]) {
+					int successor = edges[nextEdges[node]++];
+					if (indices[successor] < 0) {
+						calls[callCount++] = successor;
+						indices[successor] = lowLinks[successor] = index++;
+						nextEdges[successor] = starts[successor];
+						stack[stackSize++] = successor;
+						onStack[successor] = true;
+					} else if (onStack[successor]) {
+						lowLinks[node] = Math.min(lowLinks[node], indices[successor]);
+					}
+					continue;
+				}
+				callCount--;
+				if (callCount > 0)
+					lowLinks[calls[callCount - 1]] = Math.min(lowLinks[calls[callCount - 1]], lowLinks[node]);
+				if (lowLinks[node] != indices[node])
+					continue;
+				int member;
+				do {
+					member = stack[--stackSize];
+					onStack[member] = false;
+					unite(node / 2, member / 2, (node & 1) != (member & 1));
+				} while (member != node);
+			}
+		}
+	}
+
+	/**
+	 * Unites the classes of the remaining variables that have the same (or complementary) values in random solutions,
+	 * if a SAT solver confirms that they are equivalent. Variables with the same value in all solutions are left to the backbone.
+	 */
+	private void findSatEquivalences() {
+		Backbone encoding = new Backbone(constraints);
+		ISolver solver = encoding.newSolver();
+		if (solver instanceof ICDCL)
+			((ICDCL<?>) solver).getOrder().setPhaseSelectionStrategy(new RandomPhaseSelection());
+		long[] signatures = new long[variables.size()];
+		for (int solution = 0; solution < SOLUTIONS; solution++) {
+			int[] model = Backbone.solve(solver, new int[0]);
+			solverCalls++;
+			if (model == null) {
+				contradictory = true;
+				return;
+			}
+			boolean[] values = getValues(model);
+			for (int variable = 0; variable < variables.size(); variable++)
+				if (values[encoding.getIndex(variables.get(variable))])
+					signatures[variable] |= 1L << solution;
+		}
+
+		// groups of class representatives with the same signature, normalized so the first solution assigns false
+		LinkedHashMap<Long, List<Integer>> groups = new LinkedHashMap<>();
+		for (int variable = 0; variable < variables.size(); variable++) {
+			long signature = (signatures[variable] & 1) != 0 ? ~signatures[variable] : signatures[variable];
+			if (find(variable) == variable && signature != 0)
+				groups.computeIfAbsent(signature, s -> new ArrayList<>()).add(variable);
+		}
+		ArrayDeque<List<Integer>> queue = new ArrayDeque<>(groups.values());
+		while (!queue.isEmpty()) {
+			List<Integer> group = queue.poll();
+			if (group.size() < 2)
+				continue;
+			int representative = group.get(0);
+			int literal = getLiteral(encoding, signatures, representative);
+			// solutions that tell a member apart from the representative, which also split the other members into new groups
+			List<boolean[]> counterexamples = new ArrayList<>();
+			for (int member : group.subList(1, group.size())) {
+				int memberLiteral = getLiteral(encoding, signatures, member);
+				if (counterexamples.stream().anyMatch(values -> isTrue(values, literal) != isTrue(values, memberLiteral)))
+					continue;
+				int[] model = Backbone.solve(solver, new int[] { literal, -memberLiteral });
+				solverCalls++;
+				if (model == null) {
+					model = Backbone.solve(solver, new int[] { -literal, memberLiteral });
+					solverCalls++;
+				}
+				if (model == null)
+					unite(representative, member, (literal < 0) != (memberLiteral < 0));
+				else
+					counterexamples.add(getValues(model));
+			}
+			LinkedHashMap<BitSet, List<Integer>> subgroups = new LinkedHashMap<>();
+			for (int member : group.subList(1, group.size())) {
+				if (find(member) == find(representative))
+					continue;
+				int memberLiteral = getLiteral(encoding, signatures, member);
+				BitSet key = new BitSet(counterexamples.size());
+				for (int i = 0; i < counterexamples.size(); i++)
+					key.set(i, isTrue(counterexamples.get(i), memberLiteral));
+				subgroups.computeIfAbsent(key, k -> new ArrayList<>()).add(member);
+			}
+			queue.addAll(subgroups.values());
+		}
+	}
+
+	/**
+	 * Returns the literal of a variable in the Tseitin transformation, negated if the first random solution assigns it true,
+	 * so equivalent and complementary variables have the same literal value in all solutions.
+	 */
+	private int getLiteral(Backbone encoding, long[] signatures, int variable) {
+		int index = encoding.getIndex(variables.get(variable));
+		return (signatures[variable] & 1) != 0 ? -index : index;
+	}
+
+	private static boolean[] getValues(int[] model) {
+		boolean[] values = new boolean[model.length + 1];
+		for (int literal : model)
+			values[Math.abs(literal)] = literal > 0;
+		return values;
+	}
+
+	private static boolean isTrue(boolean[] values, int literal) {
+		return values[Math.abs(literal)] == literal > 0;
+	}
+
+	/**
+	 * Returns the root of the class of a variable, compressing the path to it.
+	 */
+	private int find(int variable) {
+		int root = variable;
+		boolean parity = false;
+		while (parents[root] != root) {
+			parity ^= parities[root];
+			root = parents[root];
+		}
+		// every variable on the path is relinked to the root, with the parity of the rest of the path
+		while (parents[variable] != root && variable != root) {
+			int parent = parents[variable];
+			boolean next = parity ^ parities[variable];
+			parents[variable] = root;
+			parities[variable] = parity;
+			variable = parent;
+			parity = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Returns whether a variable is complementary to the root of its class.
+	 */
+	private boolean getParity(int variable) {
+		find(variable);
+		return parents[variable] == variable ? false : parities[variable];
+	}
+
+	/**
+	 * Unites the classes of two variables, which are equivalent or complementary.
+	 * A contradicting union (i.e., a variable that would be complementary to itself) is only recorded.
+	 */
+	private void unite(int variable, int other, boolean complementary) {
+		int root = find(variable), otherRoot = find(other);
+		boolean parity = getParity(variable) ^ getParity(other) ^ complementary;
+		if (root == otherRoot) {
+			contradictory |= parity;
+			return;
+		}
+		parents[otherRoot] = root;
+		parities[otherRoot] = parity;
+	}
+
+	private int countMembers() {
+		int count = 0;
+		for (int variable = 0; variable < parents.length; variable++)
+			if (find(variable) != variable)
+				count++;
+		return count;
+	}
+
+	/**
+	 * Chooses the first kept variable of each class as its representative (or the first variable if none is kept),
+	 * and substitutes the representative for all other members.
+	 */
+	private void chooseRepresentatives() {
+		int[] representatives = new int[parents.length];
+		Arrays.fill(representatives, -1);
+		for (int variable = 0; variable < parents.length; variable++) {
+			int root = find(variable);
+			if (representatives[root] < 0 || (keptVariables != null && !keptVariables.contains(variables.get(representatives[root]))
+					&& keptVariables.contains(variables.get(variable))))
+				representatives[root] = variable;
+		}
+		for (int variable = 0; variable < parents.length; variable++) {
+			int representative = representatives[find(variable)];
+			if (representative == variable)
+				continue;
+			String name = variables.get(representative);
+			Literal literal = new Literal(name, getParity(variable) == getParity(representative));
+			substitution.put(variables.get(variable), literal);
+			members.computeIfAbsent(name, n -> new ArrayList<>()).add(new Literal(variables.get(variable), literal.positive));
+		}
+	}
+
+	/**
+	 * Returns a constraint with all members replaced by their representatives, or {@link #TRUE} or {@link #FALSE} if it becomes constant.
+	 * Duplicate literals are removed from conjunctions and disjunctions, and complementary literals make them constant.
+	 */
+	private Node substitute(Node node) {
+		if (node instanceof Literal) {
+			Literal literal = substitution.get(((Literal) node).var);
+			return literal == null ? node : ((Literal) node).positive ? literal : new Literal(literal.var, !literal.positive);
+		}
+		if (node instanceof Not) {
+			Node child = substitute(node.getChildren()[0]);
+			if (child instanceof Literal)
+				return new Literal(((Literal) child).var, !((Literal) child).positive);
+			return child == TRUE ? FALSE : child == FALSE ? TRUE : child == node.getChildren()[0] ? node : new Not(child);
+		}
+		boolean and = node instanceof And;
+		Node[] children = node.getChildren();
+		List<Node> substitutedChildren = new ArrayList<>(children.length);
+		HashMap<Object, Boolean> literals = new HashMap<>();
+		boolean changed = false;
+		for (Node child : children) {
+			Node substitutedChild = substitute(child);
+			changed |= substitutedChild != child;
+			if (substitutedChild == (and ? FALSE : TRUE))
+				return substitutedChild;
+			if (substitutedChild == (and ? TRUE : FALSE))
+				continue;
+			if (substitutedChild instanceof Literal) {
+				Literal literal = (Literal) substitutedChild;
+				Boolean positive = literals.putIfAbsent(literal.var, literal.positive);
+				if (positive != null && positive != literal.positive)
+					return and ? FALSE : TRUE;
+				if (positive != null) {
+					changed = true;
+					continue;
+				}
+			}
+			substitutedChildren.add(substitutedChild);
+		}
+		if (substitutedChildren.isEmpty())
+			return and ? TRUE : FALSE;
+		if (substitutedChildren.size() == 1)
+			return substitutedChildren.get(0);
+		if (!changed)
+			return node;
+		Node[] newChildren = substitutedChildren.toArray(new Node[0]);
+		return and ? new And(newChildren) : new Or(newChildren);
+	}
+
+	/**
+	 * Returns whether a variable is a member of a class that is replaced by its representative.
+	 */
+	boolean isCollapsed(String variable) {
+		return substitution.containsKey(variable);
+	}
+
+	/**
+	 * Writes a {@code c eq} comment for each listed member of a representative's class, after the representative's own entry in a variable directory.
+	 *
+	 * @param out            the buffer to write to
+	 * @param representative the name of the representative
+	 * @param number         the number of the representative in the written file
+	 * @param charset        the charset for encoding names
+	 */
+	void write(OutputBuffer out, String representative, int number, Charset charset) throws IOException {
+		for (Literal member : members.getOrDefault(representative, new ArrayList<>())) {
+			if (keptVariables != null && !keptVariables.contains(member.var))
+				continue;
+			out.put(EQUIVALENCE);
+			out.putInt(member.positive ? number : -number);
+			out.put((byte) ' ');
+			out.put(((String) member.var).getBytes(charset));
+			out.put((byte) '\n');
+		}
+	}
+
+	/**
+	 * Writes statistics on the equivalences into a report.
+	 */
+	void report(Report report) {
+		if (contradictory) {
+			report.println("equivalences: none, as the constraints are unsatisfiable");
+			return;
+		}
+		report.println("equivalences: collapsed %d of %d variables into %d representatives (%d structurally), %d solver calls",
+				substitution.size(), variables.size(), members.size(), structuralMembers, solverCalls);
+	}
+}
@@ -0,0 +1,445 @@
+import de.ovgu.featureide.fm.core.base.FeatureUtils;
+import de.ovgu.featureide.fm.core.base.IConstraint;
+import de.ovgu.featureide.fm.core.base.IFeature;
+import de.ovgu.featureide.fm.core.base.IFeatureModel;
+import de.ovgu.featureide.fm.core.base.IFeatureStructure;
+import de.ovgu.featureide.fm.core.editing.AdvancedNodeCreator;
+import de.ovgu.featureide.fm.core.editing.NodeCreator;
+import org.prop4j.And;
+import org.prop4j.AtMost;
+import org.prop4j.Implies;
+import org.prop4j.Literal;
+import org.prop4j.Node;
+import org.prop4j.Or;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Compact, read-only representation of a feature model, that is, its feature tree and its cross-tree constraints.
+ * FeatureIDE's {@link IFeatureModel} keeps several objects per feature (e.g., its structure, properties, and listeners),
+ * whereas this keeps a few array entries per feature, so large models can be converted without building that object graph.
+ *
+ * <p>Features are numbered in preorder, which is also the order in which FeatureIDE's readers add them to a feature model.
+ * So, the subtree of each feature is a contiguous range of numbers, and the children of a feature are found by skipping the subtrees of their preceding siblings.
+ * Group types and mandatory flags are stored as set by a reader (see {@link IFeatureStructure}),
+ * and their effective values are derived as FeatureIDE does (e.g., the only child of an or-group is mandatory).
+ * Names are shared with the literals of the constraints, so each name is stored once.
+ * Constraints are stored as formulas in a {@link FormulaArena}, from which writers can take them without creating nodes.
+ * The arena grows as formulas are derived from it (e.g., by {@link #getFormulas()}), so a tree must not be used by several threads at once.
+ */
+public class FeatureTree {
+	// group types, which apply to the children of a feature
+	static final byte AND = 0;
+	static final byte OR = 1;
+	static final byte ALTERNATIVE = 2;
+
+	private final String[] names;
+	private final int[] parents;
+	// the end (exclusive) of the subtree of each feature
+	private final int[] ends;
+	private final byte[] groups;
+	private final BitSet mandatory;
+	// features whose name was used by a preceding feature, which FeatureIDE keeps in the tree, but not in the feature model
+	private final BitSet duplicates;
+	private final FormulaArena formulas;
+	private final int[] constraints;
+
+	/**
+	 * Builder for a feature tree, which adds features in preorder (i.e., each feature after its parent and before its siblings' subtrees).
+	 */
+	static class Builder {
+		private final HashMap<String, Integer> indices = new HashMap<>();
+		private final BitSet mandatory = new BitSet();
+		private final BitSet duplicates = new BitSet();
+		private final FormulaArena formulas;
+		private int[] constraints = new int[16];
+		private int constraintCount;
+		private String[] names = new String[16];
+		private int[] parents = new int[16];
+		private byte[] groups = new byte[16];
+		private int size;
+
+		Builder() {
+			this(new FormulaArena());
+		}
+
+		/**
+		 * Creates a builder for a feature tree whose constraints are formulas in the given arena.
+		 */
+		Builder(FormulaArena formulas) {
+			this.formulas = formulas;
+		}
+
+		/**
+		 * Adds a feature, whose group type is {@link #AND} and which is not mandatory.
+		 * Feature names should be unique, but FeatureIDE keeps a feature with the name of a preceding feature in the tree
+		 * (e.g., for a .model variable named like the root, or a UVL feature declared twice), so such a feature is kept as well.
+		 *
+		 * @param name   the name of the feature
+		 * @param parent the parent of the feature, which must be the last added feature or one of its ancestors, or -1 for the root
+		 * @return the number of the feature
+		 */
+		int addFeature(String name, int parent) {
+			Integer feature = indices.putIfAbsent(name, size);
+			if (feature != null) {
+				name = names[feature];
+				duplicates.set(size);
+			}
+			if (size == names.length) {
+				names = Arrays.copyOf(names, 2 * size);
+				parents = Arrays.copyOf(parents, 2 * size);
+				groups = Arrays.copyOf(groups, 2 * size);
+			}
+			names[size] = name;
+			parents[size] = parent;
+			return size++;
+		}
+
+		void setGroup(int feature, byte group) {
+			groups[feature] = group;
+		}
+
+		void setMandatory(int feature, boolean mandatory) {
+			this.mandatory.set(feature, mandatory);
+		}
+
+		/**
+		 * Returns the name of a feature added before, sharing one string instance among all its occurrences, or null if there is no such feature.
+		 */
+		String getName(String name) {
+			Integer feature = indices.get(name);
+			return feature != null ? names[feature] : null;
+		}
+
+		int getFeatureCount() {
+			return size;
+		}
+
+		/**
+		 * Returns the arena of the formulas of the constraints.
+		 */
+		FormulaArena getFormulaArena() {
+			return formulas;
+		}
+
+		void addConstraint(Node constraint) {
+			addConstraint(formulas.of(constraint));
+		}
+
+		/**
+		 * Adds a constraint, which must be a formula in the arena of this builder.
+		 */
+		void addConstraint(int constraint) {
+			if (constraintCount == constraints.length)
+				constraints = Arrays.copyOf(constraints, 2 * constraintCount);
+			constraints[constraintCount++] = constraint;
+		}
+
+		FeatureTree build() {
+			return new FeatureTree(Arrays.copyOf(names, size), Arrays.copyOf(parents, size), Arrays.copyOf(groups, size), mandatory,
+					duplicates, formulas, Arrays.copyOf(constraints, constraintCount));
+		}
+	}
+
+	private FeatureTree(String[] names, int[] parents, byte[] groups, BitSet mandatory, BitSet duplicates, FormulaArena formulas,
+			int[] constraints) {
+		this.names = names;
+		this.parents = parents;
+		this.groups = groups;
+		this.mandatory = mandatory;
+		this.duplicates = duplicates;
+		this.formulas = formulas;
+		this.constraints = constraints;
+		ends = new int[names.length];
+		for (int feature = names.length - 1; feature >= 0; feature--) {
+			ends[feature] = Math.max(ends[feature], feature + 1);
+			if (parents[feature] >= 0)
+				ends[parents[feature]] = Math.max(ends[parents[feature]], ends[feature]);
+		}
+	}
+
+	/**
+	 * Returns the feature tree of a feature model, which no longer refers to the feature model afterwards.
+	 */
+	static FeatureTree of(IFeatureModel featureModel) {
+		Builder builder = new Builder();
+		IFeature root = FeatureUtils.getRoot(featureModel);
+		if (root != null)
+			addFeature(builder, root.getStructure(), -1, featureModel);
+		for (IConstraint constraint : new ArrayList<>(featureModel.getConstraints()))
+			builder.addConstraint(constraint.getNode());
+		return builder.build();
+	}
+
+	private static void addFeature(Builder builder, IFeatureStructure structure, int parent, IFeatureModel featureModel) {
+		int feature = builder.addFeature(NodeCreator.getVariable(structure.getFeature().getName(), featureModel), parent);
+		builder.setGroup(feature, structure.isAndInternal() ? AND : structure.isMultipleInternal() ? OR : ALTERNATIVE);
+		builder.setMandatory(feature, structure.isMandatorySet());
+		for (IFeatureStructure child : structure.getChildren())
+			addFeature(builder, child, feature, featureModel);
+	}
+
+	/**
+	 * Returns the feature tree with a given root feature, one optional child feature per variable, and given constraints,
+	 * as FeatureIDE's readers for .model and DIMACS files create it.
+	 */
+	static FeatureTree flat(String root, Collection<String> variables, List<Node> constraints) {
+		Builder builder = flat(root, variables, new FormulaArena());
+		constraints.forEach(builder::addConstraint);
+		return builder.build();
+	}
+
+	/**
+	 * Returns the feature tree with a given root feature, one optional child feature per variable, and given constraints,
+	 * which must be formulas in the given arena.
+	 */
+	static FeatureTree flat(String root, Collection<String> variables, FormulaArena formulas, int[] constraints) {
+		Builder builder = flat(root, variables, formulas);
+		for (int constraint : constraints)
+			builder.addConstraint(constraint);
+		return builder.build();
+	}
+
+	private static Builder flat(String root, Collection<String> variables, FormulaArena formulas) {
+		Builder builder = new Builder(formulas);
+		builder.addFeature(root, -1);
+		for (String variable : variables)
+			builder.addFeature(variable, 0);
+		return builder;
+	}
+
+	/**
+	 * Returns the names of all features in preorder, each only once, as FeatureIDE numbers them in DIMACS files.
+	 */
+	List<String> getNames() {
+		if (duplicates.isEmpty())
+			return Arrays.asList(names);
+		List<String> names = new ArrayList<>(this.names.length - duplicates.cardinality());
+		for (int feature = 0; feature < this.names.length; feature++)
+			if (!duplicates.get(feature))
+				names.add(this.names[feature]);
+		return names;
+	}
+
+	int getConstraintCount() {
+		return constraints.length;
+	}
+
+	/**
+	 * Returns a feature tree with the same features, but other constraints (e.g., without redundant ones).
+	 */
+	FeatureTree withConstraints(List<Node> constraints) {
+		int[] newConstraints = new int[constraints.size()];
+		for (int i = 0; i < newConstraints.length; i++)
+			newConstraints[i] = formulas.of(constraints.get(i));
+		return new FeatureTree(names, parents, groups, mandatory, duplicates, formulas, newConstraints);
+	}
+
+	/**
+	 * Returns the arena of the formulas of the constraints and of {@link #getFormulas()}.
+	 */
+	FormulaArena getFormulaArena() {
+		return formulas;
+	}
+
+	private int getChildCount(int feature) {
+		int count = 0;
+		for (int child = feature + 1; child < ends[feature]; child = ends[child])
+			count++;
+		return count;
+	}
+
+	// the effective group types and mandatory flags, given the number of children of the (parent) feature
+	private boolean isAnd(int feature, int childCount) {
+		return groups[feature] == AND || childCount <= 1;
+	}
+
+	private boolean isAlternative(int feature, int childCount) {
+		return groups[feature] == ALTERNATIVE && childCount > 1;
+	}
+
+	private boolean isMandatory(int child, int parentChildCount) {
+		int parent = parents[child];
+		return parent < 0 || (groups[parent] != AND && parentChildCount == 1) || mandatory.get(child);
+	}
+
+	/**
+	 * Returns the nodes that describe the feature tree, that is, its root feature, its feature tree, and its cross-tree constraints.
+	 * Same as {@link NodeUtils#getNodes(IFeatureModel)} on the feature model, but without building it.
+	 * The constraint nodes are shared with common subformulas and later calls, so they must not be modified.
+	 */
+	List<Node> getNodes() {
+		List<Node> nodes = new ArrayList<>(2 * names.length + constraints.length);
+		if (names.length > 0 && !names[0].equals("NewRootFeature")) {
+			nodes.add(new Literal(names[0]));
+			for (int feature = 0; feature < names.length; feature++)
+				addNodes(nodes, feature);
+		}
+		for (int constraint : constraints)
+			nodes.add(formulas.toNode(constraint));
+		return nodes;
+	}
+
+	/**
+	 * Returns the formulas that describe the feature tree, which are added to the arena of this tree.
+	 * Same as {@link #getNodes()}, but without creating nodes.
+	 */
+	int[] getFormulas() {
+		// each feature adds at most three formulas
+		int[] result = new int[1 + 3 * names.length + constraints.length];
+		int count = 0;
+		if (names.length > 0 && !names[0].equals("NewRootFeature")) {
+			result[count++] = formulas.literal(names[0], true);
+			for (int feature = 0; feature < names.length; feature++)
+				count = addFormulas(result, count, feature);
+		}
+		System.arraycopy(constraints, 0, result, count, constraints.length);
+		return Arrays.copyOf(result, count + constraints.length);
+	}
+
+	/**
+	 * Adds the formulas that relate a feature to its children, as {@link #addNodes} adds their nodes.
+	 *
+	 * @return the new number of formulas
+	 */
+	private int addFormulas(int[] result, int count, int feature) {
+		int childCount = getChildCount(feature);
+		if (childCount == 0)
+			return count;
+		int parent = formulas.literal(names[feature], true);
+		int[] children = getChildFormulas(feature, childCount);
+		int definition = children.length == 1 ? children[0] : formulas.or(children);
+		if (isAnd(feature, childCount)) {
+			int[] mandatoryChildren = new int[childCount];
+			int mandatoryCount = 0;
+			for (int child = feature + 1; child < ends[feature]; child = ends[child])
+				if (isMandatory(child, childCount))
+					mandatoryChildren[mandatoryCount++] = formulas.literal(names[child], true);
+
+			// S => (A & B) for all mandatory children
+			if (mandatoryCount == 1)
+				result[count++] = formulas.operation(FormulaArena.IMPLIES, 0, parent, mandatoryChildren[0]);
+			else if (mandatoryCount > 1)
+				result[count++] = formulas.operation(FormulaArena.IMPLIES, 0, parent,
+						formulas.and(Arrays.copyOf(mandatoryChildren, mandatoryCount)));
+
+			// (A | B | C) => S
+			result[count++] = formulas.operation(FormulaArena.IMPLIES, 0, definition, parent);
+		} else {
+			// S <=> (A | B | C)
+			result[count++] = formulas.operation(FormulaArena.IMPLIES, 0, parent, definition);
+			result[count++] = formulas.operation(FormulaArena.IMPLIES, 0, definition, parent);
+
+			// atmost1(A, B, C)
+			if (isAlternative(feature, childCount))
+				result[count++] = formulas.operation(FormulaArena.AT_MOST, 1, children);
+		}
+		return count;
+	}
+
+	private int[] getChildFormulas(int feature, int childCount) {
+		int[] literals = new int[childCount];
+		int i = 0;
+		for (int child = feature + 1; child < ends[feature]; child = ends[child])
+			literals[i++] = formulas.literal(names[child], true);
+		return literals;
+	}
+
+	/**
+	 * Adds the nodes that relate a feature to its children, in the same order as {@link NodeUtils#getNodes(IFeatureModel)}.
+	 */
+	private void addNodes(List<Node> nodes, int feature) {
+		int childCount = getChildCount(feature);
+		if (childCount == 0)
+			return;
+		Literal[] children = getChildLiterals(feature, childCount);
+		Node definition = children.length == 1 ? children[0] : new Or(children);
+		if (isAnd(feature, childCount)) {
+			List<Node> mandatoryChildren = new ArrayList<>();
+			for (int child = feature + 1; child < ends[feature]; child = ends[child])
+				if (isMandatory(child, childCount))
+					mandatoryChildren.add(new Literal(names[child]));
+
+			// S => (A & B) for all mandatory children
+			if (mandatoryChildren.size() == 1)
+				nodes.add(new Implies(new Literal(names[feature]), mandatoryChildren.get(0)));
+			else if (mandatoryChildren.size() > 1)
+				nodes.add(new Implies(new Literal(names[feature]), new And(mandatoryChildren)));
+
+			// (A | B | C) => S
+			nodes.add(new Implies(definition, new Literal(names[feature])));
+		} else {
+			// S <=> (A | B | C)
+			nodes.add(new Implies(new Literal(names[feature]), definition));
+			nodes.add(new Implies(definition, new Literal(names[feature])));
+
+			// atmost1(A, B, C)
+			if (isAlternative(feature, childCount))
+				nodes.add(new AtMost(1, children));
+		}
+	}
+
+	private Literal[] getChildLiterals(int feature, int childCount) {
+		Literal[] literals = new Literal[childCount];
+		int i = 0;
+		for (int child = feature + 1; child < ends[feature]; child = ends[child])
+			literals[i++] = new Literal(names[child]);
+		return literals;
+	}
+
+	/**
+	 * Returns a conjunction of clauses for the feature tree, and the cross-tree constraints.
+	 * Same as {@link AdvancedNodeCreator#createNodes()} on the feature model (as used by FeatureIDE's DIMACS format), but without building it.
+	 *
+	 * @param omitRoot whether to omit the root feature (e.g., the synthetic root of a DIMACS file), unless a constraint refers to it
+	 */
+	Node getCnfNode(boolean omitRoot) {
+		List<Node> clauses = new ArrayList<>(2 * names.length + constraints.length + 2);
+		if (names.length > 0) {
+			if (!(omitRoot && !isInConstraints(names[0])))
+				clauses.add(new Literal(names[0]));
+			for (int feature = 0; feature < names.length; feature++) {
+				int childCount = getChildCount(feature);
+				// FeatureIDE creates these clauses for each feature of the feature model, which has no duplicates
+				if (childCount == 0 || duplicates.get(feature))
+					continue;
+				// the clauses of an omitted root lack its literal, which is true
+				boolean withParent = !omitRoot || feature != 0;
+				if (withParent)
+					for (int child = feature + 1; child < ends[feature]; child = ends[child])
+						clauses.add(new Or(new Literal(names[feature]), new Literal(names[child], false)));
+				if (isAnd(feature, childCount)) {
+					for (int child = feature + 1; child < ends[feature]; child = ends[child])
+						if (isMandatory(child, childCount))
+							clauses.add(withParent ? new Or(new Literal(names[child]), new Literal(names[feature], false)) : new Or(new Literal(names[child])));
+				} else {
+					Literal[] literals = getChildLiterals(feature, withParent ? childCount + 1 : childCount);
+					if (withParent)
+						literals[childCount] = new Literal(names[feature], false);
+					clauses.add(new Or(literals));
+					if (isAlternative(feature, childCount))
+						for (int child1 = feature + 1; child1 < ends[feature]; child1 = ends[child1])
+							for (int child2 = ends[child1]; child2 < ends[feature]; child2 = ends[child2])
+								clauses.add(new Or(new Literal(names[child1], false), new Literal(names[child2], false)));
+				}
+			}
+		}
+		for (int constraint : constraints)
+			clauses.add(formulas.toNode(constraint).clone());
+		clauses.add(new Literal(NodeCreator.varTrue));
+		clauses.add(new Literal(NodeCreator.varFalse, false));
+		return new And(clauses);
+	}
+
+	private boolean isInConstraints(String name) {
+		for (int constraint : constraints)
+			if (formulas.toNode(constraint).getContainedFeatures().contains(name))
+				return true;
+		return false;
+	}
+}
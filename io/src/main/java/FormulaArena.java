@@ -0,0 +1,498 @@
+import org.prop4j.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Arena of propositional formulas, which identifies each formula by an integer instead of a prop4j {@link Node}.
+ * Formulas are hash-consed, that is, structurally equal formulas (e.g., subexpressions repeated in a .model file)
+ * are stored only once and have the same identifier, and variables are interned.
+ * Each formula takes a few array entries instead of a node with its own array of children,
+ * so formulas can be transformed and written without allocating nodes.
+ * Converting a formula from and to nodes preserves its structure exactly (e.g., a negated literal stays a negation),
+ * so the io pipeline produces the same output as with nodes.
+ * Nodes converted from the same arena share the nodes of common subformulas, so they must not be modified.
+ */
+public class FormulaArena {
+	// operators, which correspond to prop4j's node types
+	static final byte LITERAL = 0;
+	static final byte NOT = 1;
+	static final byte AND = 2;
+	static final byte OR = 3;
+	static final byte IMPLIES = 4;
+	static final byte EQUALS = 5;
+	static final byte AT_MOST = 6;
+	static final byte AT_LEAST = 7;
+	static final byte CHOOSE = 8;
+
+	// for each formula, its operator, payload, and the start of its operands in the operand array,
+	// where the payload is the signed index of the variable of a literal or the bound of a cardinality constraint
+	private byte[] operators = new byte[1024];
+	private int[] payloads = new int[1024];
+	private int[] operandStarts = new int[1025];
+	private int[] operands = new int[1024];
+	// formulas that contain operators other than negation, conjunction, and disjunction
+	private final BitSet nonstandard = new BitSet();
+	private int size;
+	// open-addressing hash table of all formulas except literals, where each slot holds a formula plus one (or zero if empty) and its hash,
+	// so that most probes only read one cache line
+	private int[] table = new int[4096];
+	private int tableSize;
+	private final List<Object> variables = new ArrayList<>();
+	private final HashMap<Object, Integer> variableIndices = new HashMap<>();
+	// the positive and negative literal plus one of each variable, or zero if not added yet, which need no lookup in the hash table
+	private int[] literals = new int[256];
+	// nodes of the formulas converted so far, so that common subformulas share their nodes
+	private Node[] nodes = new Node[0];
+	// formulas plus one without nonstandard operators, if already computed with the pairwise encoding
+	private int[] eliminated = new int[0];
+	private final int[] unaryOperand = new int[1];
+
+	/**
+	 * Returns the number of formulas in this arena.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the literal of a variable, which is interned.
+	 */
+	int literal(Object variable, boolean positive) {
+		Integer index = variableIndices.get(variable);
+		if (index == null) {
+			variables.add(variable);
+			index = variables.size();
+			variableIndices.put(variable, index);
+			if (literals.length < 2 * index)
+				literals = Arrays.copyOf(literals, 4 * index);
+		}
+		int i = 2 * (index - 1) + (positive ? 0 : 1);
+		if (literals[i] == 0)
+			literals[i] = append(LITERAL, positive ? index : -index, null, 0) + 1;
+		return literals[i] - 1;
+	}
+
+	int not(int operand) {
+		unaryOperand[0] = operand;
+		return add(NOT, 0, unaryOperand, 1);
+	}
+
+	int and(int... operands) {
+		return add(AND, 0, operands, operands.length);
+	}
+
+	int or(int... operands) {
+		return add(OR, 0, operands, operands.length);
+	}
+
+	/**
+	 * Returns the formula with the given operator and operands.
+	 *
+	 * @param operator the operator
+	 * @param bound    the bound of a cardinality constraint, otherwise ignored
+	 * @param operands the operands
+	 */
+	int operation(byte operator, int bound, int... operands) {
+		if (operator == LITERAL)
+			throw new IllegalArgumentException("literals have no operands");
+		return add(operator, operator >= AT_MOST ? bound : 0, operands, operands.length);
+	}
+
+	byte getOperator(int formula) {
+		return operators[formula];
+	}
+
+	/**
+	 * Returns the bound of a cardinality constraint.
+	 */
+	int getBound(int formula) {
+		return payloads[formula];
+	}
+
+	int getOperandCount(int formula) {
+		return operandStarts[formula + 1] - operandStarts[formula];
+	}
+
+	int getOperand(int formula, int i) {
+		return operands[operandStarts[formula] + i];
+	}
+
+	/**
+	 * Returns the variable of a literal.
+	 */
+	Object getVariable(int formula) {
+		return variables.get(getVariableIndex(formula));
+	}
+
+	/**
+	 * Returns the index of the variable of a literal, where variables are indexed in the order they were added.
+	 */
+	int getVariableIndex(int formula) {
+		return Math.abs(payloads[formula]) - 1;
+	}
+
+	/**
+	 * Returns the variable with the given index.
+	 */
+	Object getVariableAt(int index) {
+		return variables.get(index);
+	}
+
+	int getVariableCount() {
+		return variables.size();
+	}
+
+	/**
+	 * Returns whether a literal is positive.
+	 */
+	boolean isPositive(int formula) {
+		return payloads[formula] > 0;
+	}
+
+	/**
+	 * Replaces each variable with another one (e.g., a name with the canonical instance of the same name).
+	 * Equal variables must be replaced with equal ones, and no variables may be merged.
+	 */
+	void replaceVariables(UnaryOperator<Object> replacement) {
+		variableIndices.clear();
+		for (int i = 0; i < variables.size(); i++) {
+			variables.set(i, replacement.apply(variables.get(i)));
+			variableIndices.put(variables.get(i), i + 1);
+		}
+		nodes = new Node[0];
+	}
+
+	/**
+	 * Returns the formula of a node.
+	 */
+	int of(Node node) {
+		if (node instanceof Literal)
+			return literal(((Literal) node).var, ((Literal) node).positive);
+		Node[] children = node.getChildren();
+		int[] operands = new int[children.length];
+		for (int i = 0; i < children.length; i++)
+			operands[i] = of(children[i]);
+		return operation(getOperator(node), getBound(node), operands);
+	}
+
+	private static byte getOperator(Node node) {
+		if (node instanceof Not)
+			return NOT;
+		if (node instanceof And)
+			return AND;
+		if (node instanceof Or)
+			return OR;
+		if (node instanceof Implies)
+			return IMPLIES;
+		if (node instanceof Equals)
+			return EQUALS;
+		if (node instanceof AtMost)
+			return AT_MOST;
+		if (node instanceof AtLeast)
+			return AT_LEAST;
+		if (node instanceof Choose)
+			return CHOOSE;
+		throw new IllegalArgumentException("unsupported node type " + node.getClass());
+	}
+
+	private static int getBound(Node node) {
+		if (node instanceof AtMost)
+			return ((AtMost) node).max;
+		if (node instanceof AtLeast)
+			return ((AtLeast) node).min;
+		if (node instanceof Choose)
+			return ((Choose) node).n;
+		return 0;
+	}
+
+	/**
+	 * Returns the formula of a formula in another arena.
+	 *
+	 * @param source  the other arena
+	 * @param formula the formula in the other arena
+	 * @param copies  the formulas plus one already copied from the other arena, indexed by their formulas there
+	 */
+	int copy(FormulaArena source, int formula, int[] copies) {
+		if (copies[formula] != 0)
+			return copies[formula] - 1;
+		int copy;
+		if (source.operators[formula] == LITERAL) {
+			copy = literal(source.getVariable(formula), source.isPositive(formula));
+		} else {
+			int[] newOperands = new int[source.getOperandCount(formula)];
+			for (int i = 0; i < newOperands.length; i++)
+				newOperands[i] = copy(source, source.getOperand(formula, i), copies);
+			copy = add(source.operators[formula], source.payloads[formula], newOperands, newOperands.length);
+		}
+		copies[formula] = copy + 1;
+		return copy;
+	}
+
+	/**
+	 * Returns the node of a formula.
+	 * The nodes of a formula and its subformulas are created once, and shared by all nodes returned by this arena.
+	 */
+	Node toNode(int formula) {
+		if (nodes.length <= formula)
+			nodes = Arrays.copyOf(nodes, Math.max(size, 2 * nodes.length));
+		if (nodes[formula] != null)
+			return nodes[formula];
+		Node node;
+		if (operators[formula] == LITERAL) {
+			node = new Literal(getVariable(formula), isPositive(formula));
+		} else {
+			Node[] children = new Node[getOperandCount(formula)];
+			for (int i = 0; i < children.length; i++)
+				children[i] = toNode(getOperand(formula, i));
+			switch (operators[formula]) {
+				case NOT:
+					node = new Not(children[0]);
+					break;
+				case AND:
+					node = new And(children);
+					break;
+				case OR:
+					node = new Or(children);
+					break;
+				case IMPLIES:
+					node = new Implies(children[0], children[1]);
+					break;
+				case EQUALS:
+					node = new Equals(children[0], children[1]);
+					break;
+				case AT_MOST:
+					node = new AtMost(payloads[formula], children);
+					break;
+				case AT_LEAST:
+					node = new AtLeast(payloads[formula], children);
+					break;
+				default:
+					node = new Choose(payloads[formula], children);
+			}
+		}
+		nodes[formula] = node;
+		return node;
+	}
+
+	/**
+	 * Replaces all operators other than negation, conjunction, and disjunction.
+	 * Same as {@link NodeUtils#eliminateNonCNFOperators(Node, CardinalityEncoding)}, but without creating nodes.
+	 * As the result does not depend on the context of a formula, it is computed once per formula with the pairwise encoding.
+	 * Other encodings create new auxiliary variables on each call, just as for nodes.
+	 */
+	int eliminateNonCNFOperators(int formula, CardinalityEncoding encoding) {
+		// replacing the operands of a formula with only standard operators results in the same formula
+		if (!nonstandard.get(formula))
+			return formula;
+		boolean memoize = encoding == CardinalityEncoding.PAIRWISE;
+		if (memoize && formula < eliminated.length && eliminated[formula] != 0)
+			return eliminated[formula] - 1;
+		int result = formula;
+		if (operators[formula] != LITERAL) {
+			int[] newOperands = new int[getOperandCount(formula)];
+			for (int i = 0; i < newOperands.length; i++)
+				newOperands[i] = eliminateNonCNFOperators(getOperand(formula, i), encoding);
+			result = eliminate(operators[formula], payloads[formula], newOperands, encoding);
+		}
+		if (memoize) {
+			if (eliminated.length <= formula)
+				eliminated = Arrays.copyOf(eliminated, Math.max(size, 2 * eliminated.length));
+			eliminated[formula] = result + 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the formula of a node without nonstandard operators.
+	 * Same as {@link #of(Node)} on {@link NodeUtils#eliminateNonCNFOperators(Node, CardinalityEncoding)},
+	 * but in a single pass, so the original formula is not added to this arena.
+	 */
+	int eliminateNonCNFOperators(Node node, CardinalityEncoding encoding) {
+		if (node instanceof Literal)
+			return literal(((Literal) node).var, ((Literal) node).positive);
+		Node[] children = node.getChildren();
+		int[] newOperands = new int[children.length];
+		for (int i = 0; i < children.length; i++)
+			newOperands[i] = eliminateNonCNFOperators(children[i], encoding);
+		return eliminate(getOperator(node), getBound(node), newOperands, encoding);
+	}
+
+	/**
+	 * Returns the formula with the given operator and bound on operands without nonstandard operators,
+	 * replacing the operator if it is nonstandard.
+	 */
+	private int eliminate(byte operator, int bound, int[] newOperands, CardinalityEncoding encoding) {
+		switch (operator) {
+			case NOT:
+				return not(newOperands[0]);
+			case AND:
+				return and(newOperands);
+			case OR:
+				return or(newOperands);
+			case IMPLIES:
+				return or(not(newOperands[0]), newOperands[1]);
+			case EQUALS:
+				return and(or(not(newOperands[0]), newOperands[1]), or(not(newOperands[1]), newOperands[0]));
+			case AT_MOST:
+				if (encoding != CardinalityEncoding.PAIRWISE && bound == 1 && newOperands.length > 1
+						&& Arrays.stream(newOperands).allMatch(operand -> operators[operand] == LITERAL)) {
+					Literal[] literals = new Literal[newOperands.length];
+					for (int i = 0; i < literals.length; i++)
+						literals[i] = new Literal(getVariable(newOperands[i]), isPositive(newOperands[i]));
+					List<Node> clauses = encoding.atMostOne(literals);
+					int[] newClauses = new int[clauses.size()];
+					for (int i = 0; i < newClauses.length; i++)
+						newClauses[i] = of(clauses.get(i));
+					return and(newClauses);
+				}
+				return and(chooseKofN(newOperands, bound + 1, true));
+			case AT_LEAST:
+				return and(chooseKofN(newOperands, newOperands.length - bound + 1, false));
+			case CHOOSE:
+				return and(eliminateNonCNFOperators(operation(AT_MOST, bound, newOperands), encoding),
+						eliminateNonCNFOperators(operation(AT_LEAST, bound, newOperands), encoding));
+			default:
+				throw new IllegalArgumentException("unsupported operator " + operator);
+		}
+	}
+
+	/**
+	 * Returns all disjunctions of k of the given elements (negated, if requested).
+	 * Same as NodeUtils.chooseKofN.
+	 */
+	private int[] chooseKofN(int[] elements, int k, boolean negated) {
+		final int n = elements.length;
+
+		// tautology
+		if ((k == 0) || (k == (n + 1))) {
+			return new int[]{or(not(elements[0]), elements[0])};
+		}
+
+		// contradiction
+		if ((k < 0) || (k > (n + 1))) {
+			return new int[]{and(not(elements[0]), elements[0])};
+		}
+
+		final int[] newFormulas = new int[Node.binom(n, k)];
+		int j = 0;
+
+		if (negated) {
+			for (int i = 0; i < n; i++) {
+				elements[i] = not(elements[i]);
+			}
+		}
+
+		final int[] clause = new int[k];
+		final int[] index = new int[k];
+
+		// the position that is currently filled in clause
+		int level = 0;
+		index[level] = -1;
+
+		while (level >= 0) {
+			// fill this level with the next element
+			index[level]++;
+			// did we reach the maximum for this level
+			if (index[level] >= (n - (k - 1 - level))) {
+				// go to previous level
+				level--;
+			} else {
+				clause[level] = elements[index[level]];
+				if (level == (k - 1)) {
+					newFormulas[j++] = or(clause);
+				} else {
+					// go to next level
+					level++;
+					// allow only ascending orders (to prevent from duplicates)
+					index[level] = index[level - 1];
+				}
+			}
+		}
+		return newFormulas;
+	}
+
+	/**
+	 * Returns the formula with the given operator, payload, and operands, adding it if it does not exist yet.
+	 */
+	private int add(byte operator, int payload, int[] newOperands, int operandCount) {
+		int mask = table.length / 2 - 1;
+		int hash = hash(operator, payload, newOperands, operandCount);
+		int slot = hash & mask;
+		for (; table[2 * slot] != 0; slot = (slot + 1) & mask)
+			if (table[2 * slot + 1] == hash && matches(table[2 * slot] - 1, operator, payload, newOperands, operandCount))
+				return table[2 * slot] - 1;
+		int formula = append(operator, payload, newOperands, operandCount);
+		table[2 * slot] = formula + 1;
+		table[2 * slot + 1] = hash;
+		if (4 * ++tableSize > table.length)
+			rehash();
+		return formula;
+	}
+
+	/**
+	 * Appends a formula, which must not exist yet.
+	 */
+	private int append(byte operator, int payload, int[] newOperands, int operandCount) {
+		if (size == operators.length) {
+			operators = Arrays.copyOf(operators, 2 * size);
+			payloads = Arrays.copyOf(payloads, 2 * size);
+			operandStarts = Arrays.copyOf(operandStarts, 2 * size + 1);
+		}
+		int start = operandStarts[size];
+		if (start + operandCount > operands.length)
+			operands = Arrays.copyOf(operands, Math.max(2 * operands.length, start + operandCount));
+		if (operandCount > 0)
+			System.arraycopy(newOperands, 0, operands, start, operandCount);
+		operators[size] = operator;
+		payloads[size] = payload;
+		operandStarts[size + 1] = start + operandCount;
+		boolean standard = operator == LITERAL || operator == NOT || operator == AND || operator == OR;
+		for (int i = 0; standard && i < operandCount; i++)
+			standard = !nonstandard.get(newOperands[i]);
+		if (!standard)
+			nonstandard.set(size);
+		return size++;
+	}
+
+	private boolean matches(int formula, byte operator, int payload, int[] newOperands, int operandCount) {
+		if (operators[formula] != operator || payloads[formula] != payload || getOperandCount(formula) != operandCount)
+			return false;
+		int start = operandStarts[formula];
+		for (int i = 0; i < operandCount; i++)
+			if (operands[start + i] != newOperands[i])
+				return false;
+		return true;
+	}
+
+	private static int hash(byte operator, int payload, int[] operands, int operandCount) {
+		int hash = 31 * operator + payload;
+		for (int i = 0; i < operandCount; i++)
+			hash = 31 * hash + operands[i];
+		// mix all bits into the lower ones, which determine the position in the hash table
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		hash *= 0xC2B2AE35;
+		return hash ^ (hash >>> 16);
+	}
+
+	private void rehash() {
+		int[] oldTable = table;
+		table = new int[2 * oldTable.length];
+		int mask = table.length / 2 - 1;
+		for (int i = 0; i < oldTable.length; i += 2) {
+			if (oldTable[i] == 0)
+				continue;
+			int slot = oldTable[i + 1] & mask;
+			while (table[2 * slot] != 0)
+				slot = (slot + 1) & mask;
+			table[2 * slot] = oldTable[i];
+			table[2 * slot + 1] = oldTable[i + 1];
+		}
+	}
+}
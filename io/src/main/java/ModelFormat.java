@@ -1,14 +1,9 @@
 import de.ovgu.featureide.fm.core.base.*;
-import de.ovgu.featureide.fm.core.editing.NodeCreator;
 import de.ovgu.featureide.fm.core.io.AFeatureModelFormat;
 import de.ovgu.featureide.fm.core.io.ProblemList;
 import org.prop4j.*;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Format for reading and writing KConfigReader .model files.
@@ -16,39 +11,76 @@ import java.util.stream.Collectors;
  * However, that format does not read non-Boolean constraints correctly and writes only CNFs.
  */
 public class ModelFormat extends AFeatureModelFormat {
-	private static class ModelNodeReader extends NodeReader {
-		ModelNodeReader() {
-			try {
-				Field field = NodeReader.class.getDeclaredField("symbols");
-				field.setAccessible(true);
-				field.set(this, new String[] { "==", "=>", "|", "&", "!" });
-			} catch (NoSuchFieldException | IllegalAccessException e) {
-				e.printStackTrace();
-			}
+	private final CardinalityEncoding cardinalityEncoding;
+
+	/**
+	 * Writer for the formulas of a .model file.
+	 * Emits the infix notation of prop4j's {@link NodeWriter} with enforced brackets, directly from a {@link FormulaArena}.
+	 * As operators contain no characters that are escaped, the name of each variable is escaped once
+	 * instead of escaping each line with {@link #fixNonBooleanConstraints(String)}.
+	 */
+	private static class ModelFormulaWriter {
+		private final FormulaArena formulas;
+		// the escaped name of each variable in the arena, or null if not written yet
+		private String[] names = new String[0];
+		private int auxiliaryVariables;
+		private final StringBuilder sb;
+
+		ModelFormulaWriter(FormulaArena formulas, StringBuilder sb) {
+			this.formulas = formulas;
+			this.sb = sb;
 		}
-	}
 
-	private static class ModelNodeWriter extends NodeWriter {
-		ModelNodeWriter(Node root) {
-			super(root);
-			setEnforceBrackets(true);
-			try {
-				Field field = NodeWriter.class.getDeclaredField("symbols");
-				field.setAccessible(true);
+		void writeFormula(int formula) {
+			byte operator = formulas.getOperator(formula);
+			if (operator == FormulaArena.NOT && formulas.getOperator(formulas.getOperand(formula, 0)) == FormulaArena.LITERAL) {
+				int literal = formulas.getOperand(formula, 0);
+				writeLiteral(literal, !formulas.isPositive(literal));
+			} else if (operator == FormulaArena.LITERAL) {
+				writeLiteral(formula, formulas.isPositive(formula));
+			} else if (operator == FormulaArena.NOT) {
+				sb.append("!(");
+				writeFormula(formulas.getOperand(formula, 0));
+				sb.append(')');
+			} else {
 				// nonstandard operators are not supported
-				field.set(this, new String[]{"!", "&", "|", "=>", "==", "<ERR>", "<ERR>", "<ERR>", "<ERR>"});
-			} catch (NoSuchFieldException | IllegalAccessException e) {
-				e.printStackTrace();
+				if (operator != FormulaArena.AND && operator != FormulaArena.OR)
+					throw new IllegalArgumentException("unsupported operator " + operator);
+				sb.append('(');
+				for (int i = 0; i < formulas.getOperandCount(formula); i++) {
+					if (i > 0)
+						sb.append(operator == FormulaArena.AND ? '&' : '|');
+					writeFormula(formulas.getOperand(formula, i));
+				}
+				sb.append(')');
 			}
 		}
 
-		@Override
-		protected String variableToString(Object variable) {
-			return "def(" + super.variableToString(variable) + ")";
+		private void writeLiteral(int literal, boolean positive) {
+			int index = formulas.getVariableIndex(literal);
+			if (names.length <= index)
+				names = Arrays.copyOf(names, Math.max(formulas.getVariableCount(), 2 * names.length));
+			if (names[index] == null) {
+				Object variable = formulas.getVariableAt(index);
+				// auxiliary variables are named in order of appearance, and spaces are removed as in the output of the NodeWriter
+				names[index] = variable instanceof AuxiliaryVariable ? AuxiliaryVariable.NAME_PREFIX + ++auxiliaryVariables
+						: fixNonBooleanConstraints(String.valueOf(variable).replace(" ", ""));
+			}
+			if (!positive)
+				sb.append('!');
+			sb.append("def(").append(names[index]).append(')');
 		}
 	}
 
-	private static String fixNonBooleanConstraints(String l) {
+	public ModelFormat() {
+		this(CardinalityEncoding.PAIRWISE);
+	}
+
+	ModelFormat(CardinalityEncoding cardinalityEncoding) {
+		this.cardinalityEncoding = cardinalityEncoding;
+	}
+
+	static String fixNonBooleanConstraints(String l) {
 		return l.replace("=", "__EQUALS__")
 				.replace(":", "__COLON__")
 				.replace(".", "__DOT__")
@@ -63,54 +95,49 @@ public class ModelFormat extends AFeatureModelFormat {
 	public ProblemList read(IFeatureModel featureModel, CharSequence source) {
 		setFactory(featureModel);
 
-		final NodeReader nodeReader = new ModelNodeReader();
-		List<Node> constraints = source.toString().lines() //
-			.map(String::trim) //
-			.filter(l -> !l.isEmpty()) //
-			.filter(l -> !l.startsWith("#")) //
-			.map(ModelFormat::fixNonBooleanConstraints)
-			.map(l -> l.replaceAll("def\\((\\w+)\\)", "$1"))
-			.map(nodeReader::stringToNode) //
-			.filter(Objects::nonNull) // ignore non-Boolean constraints
-			.collect(Collectors.toList());
+		// non-Boolean constraints are ignored
+		ModelReader modelReader = new ModelReader(source);
+		List<Node> constraints = new ArrayList<>();
+		for (int constraint : modelReader.read())
+			constraints.add(modelReader.getFormulaArena().toNode(constraint));
 
 		featureModel.reset();
 		And andNode = new And(constraints);
-		addNodeToFeatureModel(featureModel, andNode, andNode.getUniqueContainedFeatures());
+		addNodeToFeatureModel(featureModel, andNode, modelReader.getVariables());
 
 		return new ProblemList();
 	}
 
+	/**
+	 * Returns the feature tree of a .model file.
+	 * Same as {@link FeatureTree#of(IFeatureModel)} on the feature model built by {@link #read(IFeatureModel, CharSequence)}, but without building it.
+	 */
+	static FeatureTree readFeatureTree(CharSequence source) {
+		ModelReader modelReader = new ModelReader(source);
+		int[] constraints = modelReader.read();
+		return FeatureTree.flat("Root", modelReader.getVariables(), modelReader.getFormulaArena(), constraints);
+	}
+
 	@Override
 	public String write(IFeatureModel featureModel) {
-		try {
-			final IFeature root = FeatureUtils.getRoot(featureModel);
-			final List<Node> nodes = new LinkedList<>();
-			if (root != null && !root.getName().equals("NewRootFeature")) {
-				nodes.add(new Literal(NodeCreator.getVariable(root.getName(), featureModel)));
-				Method method = NodeCreator.class.getDeclaredMethod("createNodes", Collection.class, IFeature.class, IFeatureModel.class, boolean.class, Map.class);
-				method.setAccessible(true);
-				method.invoke(NodeCreator.class, nodes, root, featureModel, true, Collections.emptyMap());
-			}
-			for (final IConstraint constraint : new ArrayList<>(featureModel.getConstraints())) {
-				nodes.add(constraint.getNode().clone());
-			}
+		return write(FeatureTree.of(featureModel));
+	}
 
-			StringBuilder sb = new StringBuilder();
-			Method method = Node.class.getDeclaredMethod("eliminateNonCNFOperators");
-			method.setAccessible(true);
-			for (Node node : nodes) {
-				// replace nonstandard operators (usually, only AtMost for alternatives) with hardcoded CNF patterns
-				node = (Node) method.invoke(node);
-				// append constraint to the built .model file
-				sb.append(fixNonBooleanConstraints(
-						new ModelNodeWriter(node).nodeToString().replace(" ", ""))).append("\n");
-			}
-			return sb.toString();
-		} catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
-			e.printStackTrace();
+	/**
+	 * Writes a feature tree as a .model file, without building a feature model.
+	 */
+	String write(FeatureTree featureTree) {
+		StringBuilder sb = new StringBuilder();
+		FormulaArena formulas = featureTree.getFormulaArena();
+		ModelFormulaWriter writer = new ModelFormulaWriter(formulas, sb);
+		for (int formula : featureTree.getFormulas()) {
+			// replace nonstandard operators (usually, only AtMost for alternatives) with CNF patterns
+			formula = formulas.eliminateNonCNFOperators(formula, cardinalityEncoding);
+			// append constraint to the built .model file
+			writer.writeFormula(formula);
+			sb.append("\n");
 		}
-		return null;
+		return sb.toString();
 	}
 
 	private void addNodeToFeatureModel(IFeatureModel featureModel, Node node, Collection<String> variables) {
@@ -140,7 +167,7 @@ public class ModelFormat extends AFeatureModelFormat {
 
 	@Override
 	public ModelFormat getInstance() {
-		return this;
+		return new ModelFormat(cardinalityEncoding);
 	}
 
 	@Override
@@ -0,0 +1,305 @@
+import org.prop4j.*;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reader for the constraints in KConfigReader .model files.
+ * Parses each line in a single pass over the characters of the source and escapes non-Boolean feature names on the fly,
+ * instead of escaping, matching, and copying each line several times before handing it to prop4j's {@link NodeReader}.
+ * The resulting nodes are the same as with the {@link NodeReader}, that is, operators associate to the right,
+ * and lines that cannot be parsed are ignored.
+ * Lines are parsed into a {@link FormulaArena}, so subexpressions that are repeated share their formulas.
+ * Lines outside the usual grammar (e.g., with quotes or misplaced parentheses) are rare,
+ * so we simply fall back to the {@link NodeReader} for them.
+ * Large inputs are split into chunks of lines, which are read in parallel and merged in their original order.
+ */
+public class ModelReader {
+	private static final Pattern DEF_PATTERN = Pattern.compile("def\\((\\w+)\\)");
+
+	/**
+	 * Thrown when a line is outside the grammar supported by this reader.
+	 */
+	private static class UnsupportedLineException extends RuntimeException {
+		UnsupportedLineException() {
+			super(null, null, false, false);
+		}
+	}
+
+	private static final UnsupportedLineException UNSUPPORTED_LINE = new UnsupportedLineException();
+
+	/**
+	 * Minimum number of characters per chunk, smaller chunks are not worth reading in parallel.
+	 * Can be lowered with the system property {@code io.minChunkLength} (e.g., so the regression check reads small files in chunks).
+	 */
+	private static final int MIN_CHUNK_LENGTH = Math.max(1, Integer.getInteger("io.minChunkLength", 1 << 20));
+
+	private final CharSequence source;
+	private final StringBuilder name = new StringBuilder();
+	private final HashMap<String, String> names = new HashMap<>();
+	private final List<String> lineVariables = new ArrayList<>();
+	private final FormulaArena formulas;
+	private Collection<String> variables = new LinkedHashSet<>();
+	private NodeReader nodeReader;
+	private int position;
+	private int end;
+
+	ModelReader(CharSequence source) {
+		this(source, new FormulaArena());
+	}
+
+	/**
+	 * Creates a reader that parses the constraints into the given arena.
+	 */
+	ModelReader(CharSequence source, FormulaArena formulas) {
+		this.source = source;
+		this.formulas = formulas;
+	}
+
+	/**
+	 * Returns the constraints in all lines, skipping empty lines, comments, and lines that cannot be parsed.
+	 * The constraints are formulas in the arena of this reader.
+	 */
+	int[] read() {
+		int[] boundaries = getChunkBoundaries();
+		if (boundaries.length == 2) {
+			List<Integer> constraints = new ArrayList<>();
+			read(0, source.length(), constraints);
+			return constraints.stream().mapToInt(Integer::intValue).toArray();
+		}
+		// the first chunk is read into the arena of this reader, the others into their own arenas, as arenas are not thread-safe
+		List<ModelReader> readers = IntStream.range(0, boundaries.length - 1)
+				.mapToObj(i -> i == 0 ? new ModelReader(source, formulas) : new ModelReader(source))
+				.collect(Collectors.toList());
+		List<List<Integer>> chunks = IntStream.range(0, readers.size()).parallel().mapToObj(i -> {
+			List<Integer> constraints = new ArrayList<>();
+			readers.get(i).read(boundaries[i], boundaries[i + 1], constraints);
+			return constraints;
+		}).collect(Collectors.toList());
+		List<Integer> constraints = new ArrayList<>(chunks.get(0));
+		LinkedHashSet<String> variables = new LinkedHashSet<>(readers.get(0).variables);
+		for (int i = 1; i < readers.size(); i++) {
+			FormulaArena chunkFormulas = readers.get(i).formulas;
+			int[] copies = new int[chunkFormulas.size()];
+			for (int constraint : chunks.get(i))
+				constraints.add(formulas.copy(chunkFormulas, constraint, copies));
+			variables.addAll(readers.get(i).variables);
+		}
+		this.variables = variables;
+		return constraints.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Returns the arena of the constraints.
+	 */
+	FormulaArena getFormulaArena() {
+		return formulas;
+	}
+
+	/**
+	 * Returns the variables in the constraints read so far, in order of their first occurrence.
+	 * Same as {@link Node#getUniqueContainedFeatures()} on a conjunction of all constraints.
+	 */
+	Collection<String> getVariables() {
+		return variables;
+	}
+
+	/**
+	 * Splits the source into chunks of whole lines, about one per available core.
+	 *
+	 * @return the start of each chunk, followed by the end of the source
+	 */
+	private int[] getChunkBoundaries() {
+		int length = source.length();
+		int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), length / MIN_CHUNK_LENGTH));
+		int[] boundaries = new int[chunks + 1];
+		for (int i = 1; i < chunks; i++) {
+			int boundary = Math.max(boundaries[i - 1], (int) ((long) length * i / chunks));
+			while (boundary < length && source.charAt(boundary - 1) != '\n')
+				boundary++;
+			boundaries[i] = boundary;
+		}
+		boundaries[chunks] = length;
+		return boundaries;
+	}
+
+	/**
+	 * Adds the constraints in all lines between two positions, which must be at line boundaries.
+	 */
+	private void read(int start, int end, List<Integer> constraints) {
+		int lineStart = start;
+		while (lineStart < end) {
+			int lineEnd = lineStart;
+			while (lineEnd < end && source.charAt(lineEnd) != '\n' && source.charAt(lineEnd) != '\r')
+				lineEnd++;
+			int constraint = readLine(lineStart, lineEnd);
+			if (constraint != -1)
+				constraints.add(constraint);
+			lineStart = lineEnd + 1;
+			if (lineEnd + 1 < end && source.charAt(lineEnd) == '\r' && source.charAt(lineEnd + 1) == '\n')
+				lineStart++;
+		}
+	}
+
+	/**
+	 * Returns the constraint in a line, or -1 if the line is empty, a comment, or cannot be parsed.
+	 */
+	private int readLine(int start, int end) {
+		while (start < end && source.charAt(start) <= ' ')
+			start++;
+		while (end > start && source.charAt(end - 1) <= ' ')
+			end--;
+		if (start == end || source.charAt(start) == '#')
+			return -1;
+		position = start;
+		this.end = end;
+		lineVariables.clear();
+		try {
+			int formula = parseOr();
+			if (position != end)
+				throw UNSUPPORTED_LINE;
+			variables.addAll(lineVariables);
+			return formula;
+		} catch (UnsupportedLineException e) {
+			return readLineWithNodeReader(source.subSequence(start, end).toString());
+		}
+	}
+
+	private int readLineWithNodeReader(String line) {
+		if (nodeReader == null) {
+			nodeReader = new NodeReader();
+			nodeReader.activatePropositionalModelSymbols();
+		}
+		line = DEF_PATTERN.matcher(ModelFormat.fixNonBooleanConstraints(line)).replaceAll("$1");
+		Node node = nodeReader.stringToNode(line);
+		if (node == null)
+			return -1;
+		variables.addAll(node.getUniqueContainedFeatures());
+		return formulas.of(node);
+	}
+
+	private int parseOr() {
+		int left = parseAnd();
+		if (position < end && source.charAt(position) == '|') {
+			position++;
+			return formulas.or(left, parseOr());
+		}
+		return left;
+	}
+
+	private int parseAnd() {
+		int left = parseNot();
+		if (position < end && source.charAt(position) == '&') {
+			position++;
+			return formulas.and(left, parseAnd());
+		}
+		return left;
+	}
+
+	private int parseNot() {
+		if (position < end && source.charAt(position) == '!') {
+			position++;
+			return formulas.not(parseNot());
+		}
+		int formula = parseAtom();
+		// an atom must be followed by an operator, a closing parenthesis, or the end of the line
+		if (position < end) {
+			char c = source.charAt(position);
+			if (c != '|' && c != '&' && c != ')')
+				throw UNSUPPORTED_LINE;
+		}
+		return formula;
+	}
+
+	private int parseAtom() {
+		if (position < end && source.charAt(position) == '(') {
+			position++;
+			int formula = parseOr();
+			if (position == end || source.charAt(position) != ')')
+				throw UNSUPPORTED_LINE;
+			position++;
+			return formula;
+		}
+		name.setLength(0);
+		while (position < end && isNameCharacter(source.charAt(position)))
+			appendEscaped(source.charAt(position++));
+		if (name.length() == 0)
+			throw UNSUPPORTED_LINE;
+		if (position < end && source.charAt(position) == '(') {
+			if (name.length() != 3 || name.charAt(0) != 'd' || name.charAt(1) != 'e' || name.charAt(2) != 'f')
+				throw UNSUPPORTED_LINE;
+			position++;
+			name.setLength(0);
+			while (position < end && isWordCharacter(source.charAt(position)))
+				appendEscaped(source.charAt(position++));
+			if (name.length() == 0 || position == end || source.charAt(position) != ')')
+				throw UNSUPPORTED_LINE;
+			position++;
+		}
+		String variable = intern();
+		lineVariables.add(variable);
+		return formulas.literal(variable, true);
+	}
+
+	/**
+	 * Returns whether a character may appear in a feature name inside def(...).
+	 * These are exactly the word characters after escaping.
+	 */
+	private static boolean isWordCharacter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_'
+				|| c == '=' || c == ':' || c == '.' || c == ',' || c == '/' || c == '\\' || c == ' ' || c == '-';
+	}
+
+	/**
+	 * Returns whether a character may appear in a feature name outside def(...).
+	 * Operators, parentheses, and characters with a special meaning for the {@link NodeReader} are excluded.
+	 */
+	private static boolean isNameCharacter(char c) {
+		return c >= ' ' && c != '(' && c != ')' && c != '|' && c != '&' && c != '!' && c != '"' && c != '#' && c != '$';
+	}
+
+	/**
+	 * Appends a character to the current name, escaping it like {@link ModelFormat#fixNonBooleanConstraints(String)}.
+	 */
+	private void appendEscaped(char c) {
+		switch (c) {
+			case '=':
+				name.append("__EQUALS__");
+				break;
+			case ':':
+				name.append("__COLON__");
+				break;
+			case '.':
+				name.append("__DOT__");
+				break;
+			case ',':
+				name.append("__COMMA__");
+				break;
+			case '/':
+				name.append("__SLASH__");
+				break;
+			case '\\':
+				name.append("__BACKSLASH__");
+				break;
+			case ' ':
+				name.append("__SPACE__");
+				break;
+			case '-':
+				name.append("__DASH__");
+				break;
+			default:
+				name.append(c);
+		}
+	}
+
+	/**
+	 * Returns the current name, sharing one string instance among all its occurrences.
+	 */
+	private String intern() {
+		String string = name.toString();
+		String interned = names.putIfAbsent(string, string);
+		return interned != null ? interned : string;
+	}
+}
@@ -0,0 +1,151 @@
+import de.ovgu.featureide.fm.core.analysis.cnf.CNF;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Computes many nested slices of one feature-model file in one run, as listed in a manifest.
+ * Each slice is computed from the slice it is nested in instead of from the full CNF,
+ * so the cost is about one incremental elimination per nesting instead of one full slice per slice.
+ *
+ * <p>The first non-empty line of the manifest that does not start with {@code #} gives the input file,
+ * and each further line describes one slice as whitespace-separated fields:
+ * <pre>
+ * [--option=value ...] file
+ * feature,... output
+ *     feature,... output
+ * </pre>
+ * A slice is nested in the closest preceding slice that is indented less, and may only keep features that slice keeps.
+ * Slices that are not indented are nested in one slice that keeps all their features, which is computed from the full CNF, but not written.
+ * Options are the same as on the command line, and each output file receives a slice as a DIMACS file.
+ * Relative input files are resolved against the working directory, relative output files against the given output directory.
+ */
+public class NestedSlicing {
+	private final Path manifestPath;
+	private final Path outputDirectory;
+
+	private static class Slice {
+		final int line;
+		final int indentation;
+		final Set<String> features;
+		final Path outputPath;
+		final List<Slice> children = new ArrayList<>();
+
+		Slice(int line, int indentation, Set<String> features, Path outputPath) {
+			this.line = line;
+			this.indentation = indentation;
+			this.features = features;
+			this.outputPath = outputPath;
+		}
+	}
+
+	NestedSlicing(Path manifestPath, Path outputDirectory) {
+		this.manifestPath = manifestPath;
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * Computes and writes all slices in the manifest.
+	 */
+	void run() throws IOException {
+		String[] inputFields = null;
+		Slice root = new Slice(0, -1, new LinkedHashSet<>(), null);
+		List<Slice> enclosingSlices = new ArrayList<>();
+		enclosingSlices.add(root);
+		List<String> lines = Files.readAllLines(manifestPath);
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			String trimmedLine = line.trim();
+			if (trimmedLine.isEmpty() || trimmedLine.startsWith("#"))
+				continue;
+			String[] fields = trimmedLine.split("\\s+");
+			if (inputFields == null) {
+				inputFields = fields;
+				if (new Options(fields).getArguments().length != 1)
+					throw new RuntimeException("line " + (i + 1) + ": usage: [--option=value ...] file");
+				continue;
+			}
+			if (fields.length != 2)
+				throw new RuntimeException("line " + (i + 1) + ": usage: feature,... output");
+			int indentation = line.indexOf(trimmedLine.charAt(0));
+			while (enclosingSlices.get(enclosingSlices.size() - 1).indentation >= indentation)
+				enclosingSlices.remove(enclosingSlices.size() - 1);
+			Slice parent = enclosingSlices.get(enclosingSlices.size() - 1);
+			Set<String> features = new LinkedHashSet<>();
+			for (String feature : fields[0].split(","))
+				if (!feature.trim().isEmpty())
+					features.add(feature);
+			if (parent == root)
+				root.features.addAll(features);
+			else if (!parent.features.containsAll(features))
+				throw new RuntimeException("line " + (i + 1) + ": keeps features that the enclosing slice in line " + parent.line + " does not keep");
+			Slice slice = new Slice(i + 1, indentation, features, outputDirectory.resolve(Paths.get(fields[1])));
+			parent.children.add(slice);
+			enclosingSlices.add(slice);
+		}
+		if (inputFields == null || root.children.isEmpty())
+			throw new RuntimeException("no slices given in " + manifestPath);
+
+		Options options = new Options(inputFields);
+		if (options.getSliceMode() != SliceMode.ELIMINATE || options.isDryRun())
+			throw new RuntimeException("nested slices need --slice=eliminate and no dry run");
+		// a representative kept by the enclosing slice may be removed by a nested one, which would lose its members
+		if (options.getEquivalenceDetection() != EquivalenceDetection.NONE)
+			throw new RuntimeException("nested slices do not support --equivalences");
+		try (Report report = new Report(options.getReport())) {
+			Conversion conversion = getConversion(inputFields, root);
+			CNF cnf = conversion.getSlicingCnf(report);
+			Slicer slicer = conversion.createSlicer(cnf);
+			conversion.eliminate(slicer);
+			if (options.isPreprocessed())
+				slicer.simplify();
+			report.println("slice of all slices:");
+			slicer.report(report, cnf.getClauses().size());
+			CNF slicedCnf = slicer.getSlicedCnf();
+			for (Slice child : root.children)
+				slice(inputFields, child, slicedCnf, report);
+		}
+	}
+
+	/**
+	 * Slices a CNF to the features kept by a slice, writes it, and slices the result further for all nested slices.
+	 */
+	private void slice(String[] inputFields, Slice slice, CNF cnf, Report report) throws IOException {
+		Conversion conversion = getConversion(inputFields, slice);
+		Slicer slicer = conversion.createSlicer(cnf);
+		conversion.eliminate(slicer);
+		if (new Options(inputFields).isPreprocessed())
+			slicer.simplify();
+		report.println("slice in line %d:", slice.line);
+		slicer.report(report, cnf.getClauses().size());
+		try (FileChannel channel = FileChannel.open(slice.outputPath,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			slicer.write(channel, StandardCharsets.UTF_8);
+		}
+		if (slice.children.isEmpty())
+			return;
+		CNF slicedCnf = slicer.getSlicedCnf();
+		for (Slice child : slice.children)
+			slice(inputFields, child, slicedCnf, report);
+	}
+
+	/**
+	 * Returns a conversion of the input file into a DIMACS file that keeps the features of a slice.
+	 */
+	private static Conversion getConversion(String[] inputFields, Slice slice) {
+		String[] args = Arrays.copyOf(inputFields, inputFields.length + 2);
+		args[inputFields.length] = "dimacs";
+		args[inputFields.length + 1] = String.join(",", slice.features);
+		return new Conversion(args, null);
+	}
+}
@@ -0,0 +1,139 @@
+import de.ovgu.featureide.fm.core.base.IFeatureModel;
+import de.ovgu.featureide.fm.core.io.dimacs.DIMACSFormat;
+import de.ovgu.featureide.fm.core.io.dimacs.DimacsReader;
+import org.prop4j.*;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * Utilities for translating feature models into propositional nodes.
+ * These mirror private methods of FeatureIDE and prop4j, which we previously called with reflection.
+ * Doing without reflection keeps the io module compatible with native images.
+ */
+public class NodeUtils {
+	/**
+	 * Returns the nodes that describe a feature model, that is, its root feature, its feature tree, and its cross-tree constraints.
+	 * Constraint nodes are cloned, so they can be transformed freely.
+	 * Synthetic roots created by slicing are omitted.
+	 */
+	static List<Node> getNodes(IFeatureModel featureModel) {
+		return FeatureTree.of(featureModel).getNodes();
+	}
+
+	/**
+	 * Returns the feature tree of a DIMACS file, or null if it cannot be parsed.
+	 * Same as {@link FeatureTree#of(IFeatureModel)} on the feature model read by {@link DIMACSFormat}, but without building it.
+	 */
+	static FeatureTree readDimacs(CharSequence source) {
+		final DimacsReader dimacsReader = new DimacsReader();
+		dimacsReader.setReadingVariableDirectory(true);
+		final Node node;
+		try {
+			node = dimacsReader.read(source.toString());
+		} catch (final ParseException | IOException e) {
+			return null;
+		}
+		final List<String> variables = new ArrayList<>(dimacsReader.getVariables());
+		variables.remove(DIMACSFormat.DUMMY_ROOT_NAME);
+		return FeatureTree.flat(DIMACSFormat.DUMMY_ROOT_NAME, variables, Arrays.asList(node.getChildren()));
+	}
+
+	/**
+	 * Replaces all operators other than negation, conjunction, and disjunction.
+	 * At-most-one constraints over literals (usually, for alternatives) are replaced with the given encoding,
+	 * other cardinality constraints with hardcoded CNF patterns.
+	 */
+	static Node eliminateNonCNFOperators(Node node, CardinalityEncoding encoding) {
+		Node[] children = node.getChildren();
+		Node[] newChildren = null;
+		if (children != null) {
+			newChildren = new Node[children.length];
+			for (int i = 0; i < children.length; i++) {
+				newChildren[i] = eliminateNonCNFOperators(children[i], encoding);
+			}
+		}
+		if (node instanceof Literal)
+			return node.clone();
+		if (node instanceof Not)
+			return new Not(newChildren[0]);
+		if (node instanceof And)
+			return new And(newChildren);
+		if (node instanceof Or)
+			return new Or(newChildren);
+		if (node instanceof Implies)
+			return new Or(new Not(newChildren[0]), newChildren[1]);
+		if (node instanceof Equals)
+			return new And(new Or(new Not(newChildren[0]), newChildren[1]), new Or(new Not(newChildren[1]), newChildren[0]));
+		if (node instanceof AtMost) {
+			if (encoding != CardinalityEncoding.PAIRWISE && ((AtMost) node).max == 1 && newChildren.length > 1
+					&& Arrays.stream(newChildren).allMatch(child -> child instanceof Literal))
+				return new And(encoding.atMostOne(Arrays.copyOf(newChildren, newChildren.length, Literal[].class)));
+			return new And(chooseKofN(newChildren, ((AtMost) node).max + 1, true));
+		}
+		if (node instanceof AtLeast)
+			return new And(chooseKofN(newChildren, newChildren.length - ((AtLeast) node).min + 1, false));
+		if (node instanceof Choose) {
+			int n = ((Choose) node).n;
+			return new And(eliminateNonCNFOperators(new AtMost(n, newChildren), encoding),
+					eliminateNonCNFOperators(new AtLeast(n, newChildren), encoding));
+		}
+		throw new IllegalArgumentException("unsupported node type " + node.getClass());
+	}
+
+	/**
+	 * Returns all disjunctions of k of the given elements (negated, if requested).
+	 * Same as Node.chooseKofN.
+	 */
+	private static Node[] chooseKofN(Node[] elements, int k, boolean negated) {
+		final int n = elements.length;
+
+		// tautology
+		if ((k == 0) || (k == (n + 1))) {
+			return new Node[] { new Or(new Not(elements[0].clone()), elements[0].clone()) };
+		}
+
+		// contradiction
+		if ((k < 0) || (k > (n + 1))) {
+			return new Node[] { new And(new Not(elements[0].clone()), elements[0].clone()) };
+		}
+
+		final Node[] newNodes = new Node[Node.binom(n, k)];
+		int j = 0;
+
+		if (negated) {
+			for (int i = 0; i < n; i++) {
+				elements[i] = new Not(elements[i]);
+			}
+		}
+
+		final Node[] clause = new Node[k];
+		final int[] index = new int[k];
+
+		// the position that is currently filled in clause
+		int level = 0;
+		index[level] = -1;
+
+		while (level >= 0) {
+			// fill this level with the next element
+			index[level]++;
+			// did we reach the maximum for this level
+			if (index[level] >= (n - (k - 1 - level))) {
+				// go to previous level
+				level--;
+			} else {
+				clause[level] = elements[index[level]];
+				if (level == (k - 1)) {
+					newNodes[j++] = new Or(Node.clone(clause));
+				} else {
+					// go to next level
+					level++;
+					// allow only ascending orders (to prevent from duplicates)
+					index[level] = index[level - 1];
+				}
+			}
+		}
+		return newNodes;
+	}
+}
@@ -0,0 +1,224 @@
+import java.util.Arrays;
+
+/**
+ * Options of a conversion, given as {@code --key=value} arguments before the positional arguments.
+ * Options are accepted wherever conversion arguments are (i.e., on the command line, in {@link Batch} manifests, and in {@link Server} requests).
+ */
+public class Options {
+	static final String USAGE = "options: --alternatives=pairwise|sequential|commander|product|auto"
+			+ "\n         --cnf=distributive|tseitin|plaisted-greenbaum|hybrid --cnf-threshold=ratio"
+			+ "\n         --slice=eliminate|project --slice-order=growth|min-fill --dry-run=true|false"
+			+ "\n         --slice-time=seconds --slice-memory=megabytes --slice-fallback=project|fail"
+			+ "\n         --preprocess=true|false --backbone=true|false --equivalences=none|structural|sat"
+			+ "\n         --remove-redundant=true|false --report=file|-";
+	static final int DEFAULT_CNF_THRESHOLD = 4;
+
+	private final String[] arguments;
+	private CardinalityEncoding cardinalityEncoding = CardinalityEncoding.PAIRWISE;
+	private CnfTransformation cnfTransformation = CnfTransformation.DISTRIBUTIVE;
+	private int cnfThreshold = DEFAULT_CNF_THRESHOLD;
+	private SliceMode sliceMode = SliceMode.ELIMINATE;
+	private EliminationHeuristic eliminationHeuristic = EliminationHeuristic.GROWTH;
+	private boolean dryRun;
+	private int sliceTime;
+	private int sliceMemory;
+	private SliceFallback sliceFallback = SliceFallback.PROJECT;
+	private boolean preprocessed;
+	private boolean backbone;
+	private EquivalenceDetection equivalenceDetection = EquivalenceDetection.NONE;
+	private boolean redundancyRemoved;
+	private String report;
+
+	/**
+	 * Parses the leading options in the given arguments.
+	 *
+	 * @param args the arguments, which may start with any number of options
+	 */
+	Options(String[] args) {
+		int i = 0;
+		for (; i < args.length && isOption(args[i]); i++) {
+			String key = args[i].substring(2, args[i].indexOf('='));
+			String value = args[i].substring(args[i].indexOf('=') + 1);
+			switch (key) {
+				case "alternatives":
+					cardinalityEncoding = CardinalityEncoding.parse(value);
+					break;
+				case "cnf":
+					cnfTransformation = CnfTransformation.parse(value);
+					break;
+				case "cnf-threshold":
+					cnfThreshold = parseNonNegative(key, value);
+					break;
+				case "slice":
+					sliceMode = SliceMode.parse(value);
+					break;
+				case "slice-order":
+					eliminationHeuristic = EliminationHeuristic.parse(value);
+					break;
+				case "dry-run":
+					dryRun = parseBoolean(key, value);
+					break;
+				case "slice-time":
+					sliceTime = parseNonNegative(key, value);
+					break;
+				case "slice-memory":
+					sliceMemory = parseNonNegative(key, value);
+					break;
+				case "slice-fallback":
+					sliceFallback = SliceFallback.parse(value);
+					break;
+				case "preprocess":
+					preprocessed = parseBoolean(key, value);
+					break;
+				case "backbone":
+					backbone = parseBoolean(key, value);
+					break;
+				case "equivalences":
+					equivalenceDetection = EquivalenceDetection.parse(value);
+					break;
+				case "remove-redundant":
+					redundancyRemoved = parseBoolean(key, value);
+					break;
+				case "report":
+					report = value;
+					break;
+				default:
+					throw new RuntimeException("invalid option --" + key + "\n" + USAGE);
+			}
+		}
+		arguments = Arrays.copyOfRange(args, i, args.length);
+	}
+
+	static boolean isOption(String arg) {
+		return arg.startsWith("--") && arg.indexOf('=') > 2;
+	}
+
+	private static int parseNonNegative(String key, String value) {
+		try {
+			int number = Integer.parseInt(value);
+			if (number >= 0)
+				return number;
+		} catch (NumberFormatException e) {
+			// fall through to the error below
+		}
+		throw new RuntimeException("invalid value for --" + key + ": " + value);
+	}
+
+	private static boolean parseBoolean(String key, String value) {
+		if (value.equals("true") || value.equals("false"))
+			return value.equals("true");
+		throw new RuntimeException("invalid value for --" + key + ": " + value);
+	}
+
+	/**
+	 * Returns the positional arguments that follow the options.
+	 */
+	String[] getArguments() {
+		return arguments;
+	}
+
+	/**
+	 * Returns the encoding for at-most-one constraints of alternative groups.
+	 */
+	CardinalityEncoding getCardinalityEncoding() {
+		return cardinalityEncoding;
+	}
+
+	/**
+	 * Returns the transformation into conjunctive normal form for DIMACS output.
+	 */
+	CnfTransformation getCnfTransformation() {
+		return cnfTransformation;
+	}
+
+	/**
+	 * Returns the threshold for the hybrid CNF transformation, that is, the maximum ratio of literals after distribution to literals before.
+	 */
+	int getCnfThreshold() {
+		return cnfThreshold;
+	}
+
+	/**
+	 * Returns whether removed features are eliminated or projected away when slicing.
+	 */
+	SliceMode getSliceMode() {
+		return sliceMode;
+	}
+
+	/**
+	 * Returns the heuristic for the order in which variables are eliminated when slicing.
+	 */
+	EliminationHeuristic getEliminationHeuristic() {
+		return eliminationHeuristic;
+	}
+
+	/**
+	 * Returns whether a slice should only be planned, so the planned elimination order is written instead of the sliced file.
+	 */
+	boolean isDryRun() {
+		return dryRun;
+	}
+
+	/**
+	 * Returns the time budget for eliminating removed features in seconds, 0 for none.
+	 * Once the budget is exceeded, slicing falls back as chosen (see {@link #getSliceFallback()}).
+	 */
+	int getSliceTime() {
+		return sliceTime;
+	}
+
+	/**
+	 * Returns the memory budget for eliminating removed features in megabytes (for the clauses only), 0 for none.
+	 * Once the budget is exceeded, slicing falls back as chosen (see {@link #getSliceFallback()}).
+	 */
+	int getSliceMemory() {
+		return sliceMemory;
+	}
+
+	/**
+	 * Returns what slicing does when the budget for eliminating removed features is exceeded,
+	 * that is, projecting away the features not eliminated yet (the default) or failing.
+	 */
+	SliceFallback getSliceFallback() {
+		return sliceFallback;
+	}
+
+	/**
+	 * Returns whether DIMACS output (and .sat output of slices, which is in CNF) is simplified before it is written,
+	 * which deletes subsumed clauses, strengthens clauses, and eliminates auxiliary variables where this does not add clauses.
+	 */
+	boolean isPreprocessed() {
+		return preprocessed;
+	}
+
+	/**
+	 * Returns whether the backbone (i.e., the core and dead features) is computed before .sat or DIMACS output (or slicing),
+	 * so the fixed values are substituted into the constraints and written as unit clauses.
+	 */
+	boolean isBackbone() {
+		return backbone;
+	}
+
+	/**
+	 * Returns how equivalent features are detected before .sat or DIMACS output (or slicing),
+	 * so each class of equivalent features is collapsed into one representative variable.
+	 */
+	EquivalenceDetection getEquivalenceDetection() {
+		return equivalenceDetection;
+	}
+
+	/**
+	 * Returns whether cross-tree constraints that are implied by the feature tree and the other constraints are removed before conversion
+	 * (for inputs without a feature tree, any constraint implied by the other constraints).
+	 */
+	boolean isRedundancyRemoved() {
+		return redundancyRemoved;
+	}
+
+	/**
+	 * Returns where to write a report on the conversion ({@code -} for standard error), or null if no report is requested.
+	 */
+	String getReport() {
+		return report;
+	}
+}
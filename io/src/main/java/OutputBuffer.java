@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffer for streaming a file into a byte channel, as needed by {@link SatWriter} and {@link CnfWriter}.
+ * Integers are written as decimal digits without building strings.
+ */
+public class OutputBuffer {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final byte[] digits = new byte[11];
+
+	/**
+	 * Creates a buffer for the given channel, which is not closed.
+	 */
+	OutputBuffer(WritableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	void putInt(int value) throws IOException {
+		if (value < 0)
+			put((byte) '-');
+		long absolute = Math.abs((long) value);
+		int i = digits.length;
+		do {
+			digits[--i] = (byte) ('0' + absolute % 10);
+			absolute /= 10;
+		} while (absolute > 0);
+		if (buffer.remaining() < digits.length - i)
+			flush();
+		buffer.put(digits, i, digits.length - i);
+	}
+
+	void put(byte b) throws IOException {
+		if (!buffer.hasRemaining())
+			flush();
+		buffer.put(b);
+	}
+
+	void put(byte[] bytes) throws IOException {
+		for (int offset = 0; offset < bytes.length; ) {
+			if (!buffer.hasRemaining())
+				flush();
+			int length = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	/**
+	 * Writes all buffered bytes into the channel. Must be called after the last put.
+	 */
+	void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
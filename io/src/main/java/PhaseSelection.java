@@ -0,0 +1,27 @@
+import org.sat4j.minisat.core.IPhaseSelectionStrategy;
+
+/**
+ * Phase selection that decides each variable by {@link #select} alone, so it ignores the assignments that sat4j reports.
+ * Used to steer solvers towards solutions that tell as much as possible (see {@link Backbone} and {@link Equivalences}).
+ */
+public abstract class PhaseSelection implements IPhaseSelectionStrategy {
+	@Override
+	public void updateVar(int literal) {
+	}
+
+	@Override
+	public void init(int variableCount) {
+	}
+
+	@Override
+	public void init(int variable, int literal) {
+	}
+
+	@Override
+	public void assignLiteral(int literal) {
+	}
+
+	@Override
+	public void updateVarAtDecisionLevel(int literal) {
+	}
+}
@@ -0,0 +1,142 @@
+import org.prop4j.Node;
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Redundancy elimination, which finds the cross-tree constraints that are implied by the feature tree and the other constraints.
+ *
+ * <p>The feature tree and the constraints are Tseitin-transformed once (see {@link CnfWriter#getClauses()}), where each constraint is only required while its selector holds.
+ * A constraint is implied if the formula with the selectors of the other constraints and the negation of the constraint is unsatisfiable.
+ * Candidates are checked against all other constraints first, split among parallel workers (see {@link Workers}).
+ * As two constraints may imply each other, each candidate is then confirmed against the constraints that are not removed yet, in order.
+ * Constraints that are not candidates cannot be implied by fewer constraints either, so this only takes a solver call per candidate.
+ */
+public class Redundancy {
+	/**
+	 * Minimum number of constraints per worker.
+	 */
+	private static final int MIN_WORKER_CONSTRAINTS = 1 << 4;
+
+	private final int[][] clauses;
+	private final int variableCount;
+	private final int[] literals;
+	private final int[] selectors;
+	private int workerCount;
+	private int solverCalls;
+	private int candidates;
+	private boolean unsatisfiable;
+
+	/**
+	 * Creates a redundancy elimination for the given feature tree and constraints.
+	 *
+	 * @param treeNodes   the nodes of the feature tree, which are always required
+	 * @param constraints the cross-tree constraints to check
+	 *                    (both may only contain negations, conjunctions, and disjunctions, e.g., as returned by {@link NodeUtils#eliminateNonCNFOperators(Node, CardinalityEncoding)})
+	 */
+	Redundancy(List<Node> treeNodes, List<Node> constraints) {
+		CnfWriter encoding = new CnfWriter(Collections.emptyList());
+		for (Node node : treeNodes)
+			encoding.addConstraint(node);
+		literals = new int[constraints.size()];
+		selectors = new int[constraints.size()];
+		for (int i = 0; i < literals.length; i++) {
+			literals[i] = encoding.encode(constraints.get(i));
+			selectors[i] = encoding.newVariable();
+			encoding.addClause(new int[] { -selectors[i], literals[i] });
+		}
+		clauses = encoding.getClauses();
+		variableCount = encoding.getVariableCount();
+	}
+
+	/**
+	 * Returns which constraints are redundant, that is, implied by the feature tree and the constraints that are not redundant.
+	 * If the feature tree alone is contradictory, it implies every constraint, so none is marked redundant, and all of them are kept.
+	 */
+	boolean[] compute() {
+		boolean[] redundant = new boolean[literals.length];
+		Workers workers = new Workers(literals.length, MIN_WORKER_CONSTRAINTS);
+		workerCount = workers.getCount();
+		ISolver[] solvers = new ISolver[workerCount];
+		boolean[] required = new boolean[literals.length];
+		Arrays.fill(required, true);
+		solverCalls = workers.run(worker -> check(worker, workers.getItems(worker, 0, literals.length), solvers, required, redundant));
+		if (solvers[0] == null) {
+			unsatisfiable = true;
+			return new boolean[literals.length];
+		}
+		for (int i = 0; i < literals.length; i++) {
+			if (!redundant[i])
+				continue;
+			candidates++;
+			// a candidate is only confirmed if the constraints not removed so far still imply it
+			redundant[i] = isImplied(solvers[0], i, required);
+			solverCalls++;
+			required[i] = !redundant[i];
+		}
+		return redundant;
+	}
+
+	/**
+	 * Checks the constraints of a worker against all other constraints, marking the implied ones as candidates.
+	 * The solver of the worker is kept in the given array, so the candidates can be confirmed with it.
+	 *
+	 * @param constraints the indices of the constraints of the worker
+	 * @return the number of solver calls
+	 */
+	private int check(int worker, int[] constraints, ISolver[] solvers, boolean[] required, boolean[] candidates) {
+		ISolver solver = CnfWriter.newSolver(variableCount, clauses);
+		solvers[worker] = solver;
+		if (solver == null)
+			return 0;
+		int calls = 0;
+		for (int i : constraints) {
+			candidates[i] = isImplied(solver, i, required);
+			calls++;
+		}
+		return calls;
+	}
+
+	/**
+	 * Returns whether a constraint is implied by the feature tree and the other required constraints.
+	 */
+	private boolean isImplied(ISolver solver, int constraint, boolean[] required) {
+		VecInt assumptions = new VecInt(literals.length);
+		for (int i = 0; i < literals.length; i++)
+			if (i != constraint && required[i])
+				assumptions.push(selectors[i]);
+		assumptions.push(-literals[constraint]);
+		try {
+			return !solver.isSatisfiable(assumptions);
+		} catch (TimeoutException e) {
+			throw new RuntimeException("redundancy elimination timed out", e);
+		}
+	}
+
+	/**
+	 * Writes the removed constraints and statistics on the redundancy elimination into a report.
+	 *
+	 * @param report      the report
+	 * @param constraints the constraints as given by the input, for listing the removed ones
+	 * @param redundant   which constraints are redundant
+	 */
+	void report(Report report, List<?> constraints, boolean[] redundant) {
+		if (unsatisfiable) {
+			report.println("redundancy: none, as the feature tree is unsatisfiable");
+			return;
+		}
+		int removed = 0;
+		for (int i = 0; i < redundant.length; i++) {
+			if (redundant[i]) {
+				report.println("removed redundant constraint %s", constraints.get(i));
+				removed++;
+			}
+		}
+		report.println("redundancy: removed %d of %d constraints (%d candidates), %d solver calls in %d parallel workers",
+				removed, redundant.length, candidates, solverCalls, workerCount);
+	}
+}
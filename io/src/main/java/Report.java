@@ -0,0 +1,70 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Report on the decisions taken during a conversion (e.g., the CNF strategy chosen per constraint), as requested with {@code --report}.
+ * Reports are written to a file, or to standard error for {@code --report=-}.
+ * Nothing is written unless requested, as clausy treats any output on standard error as a failure.
+ */
+public class Report implements Closeable {
+	private final PrintWriter writer;
+	private final boolean standardError;
+
+	/**
+	 * Opens a report.
+	 *
+	 * @param target the file to write to, {@code -} for standard error, or null for no report
+	 */
+	Report(String target) throws IOException {
+		standardError = "-".equals(target);
+		if (target == null)
+			writer = null;
+		else if (standardError)
+			writer = new PrintWriter(new OutputStreamWriter(System.err, StandardCharsets.UTF_8));
+		else
+			writer = new PrintWriter(Files.newBufferedWriter(Paths.get(target), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Creates a report that is written nowhere (e.g., for conversions inside an analysis).
+	 */
+	Report() {
+		writer = null;
+		standardError = false;
+	}
+
+	/**
+	 * Returns whether this report is written anywhere, so callers can skip collecting data for it.
+	 */
+	boolean isEnabled() {
+		return writer != null;
+	}
+
+	/**
+	 * Writes a line into the report, if enabled.
+	 */
+	void println(String format, Object... args) {
+		if (writer != null) {
+			writer.printf(format, args);
+			writer.println();
+		}
+	}
+
+	/**
+	 * Flushes the report and closes its file, but not standard error.
+	 */
+	@Override
+	public void close() {
+		if (writer == null)
+			return;
+		if (standardError)
+			writer.flush();
+		else
+			writer.close();
+	}
+}
@@ -0,0 +1,204 @@
+import org.prop4j.*;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writer for DIMACS .sat files that streams into a byte channel.
+ * Emits the prefix notation of prop4j's {@link NodeWriter} (as used by {@link SatFormat}) directly in its final form,
+ * so no string is built for the whole file, or even for a single node.
+ * Formulas are written from a {@link FormulaArena}, so that common subformulas are transformed only once.
+ * As the variable directory precedes the formula, variables are numbered in a first pass in the order they are written.
+ * {@link AuxiliaryVariable}s are numbered as well, but omitted from the directory.
+ * For a projected slice, variables that are not kept are omitted from the directory as well, so they are read as auxiliary variables
+ * (which clausy does not project away when counting, see {@link SliceMode#PROJECT}).
+ */
+public class SatWriter {
+	private static final byte[] PROBLEM = "p sat ".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FORMULA = "\n*(".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] SEPARATOR = "\n  ".getBytes(StandardCharsets.US_ASCII);
+
+	private final FormulaArena formulas;
+	private final int[] roots;
+	private final HashMap<Object, Integer> variableMap = new HashMap<>();
+	private final List<Object> variables = new ArrayList<>();
+	// the number of each variable in the arena, or zero if not numbered yet
+	private int[] numbers = new int[0];
+	private final Set<String> keptVariables;
+	private Equivalences equivalences;
+	private String note;
+	private OutputBuffer out;
+
+	/**
+	 * Creates a writer for the given formulas (e.g., as returned by {@link FeatureTree#getFormulas()}).
+	 * Nonstandard operators are replaced in the given arena.
+	 *
+	 * @param formulas the arena of the formulas
+	 * @param roots    the formulas
+	 * @param encoding the encoding for at-most-one constraints
+	 */
+	SatWriter(FormulaArena formulas, int[] roots, CardinalityEncoding encoding) {
+		this.formulas = formulas;
+		this.roots = new int[roots.length];
+		keptVariables = null;
+		BitSet visited = new BitSet();
+		for (int i = 0; i < roots.length; i++) {
+			// replace nonstandard operators (usually, only AtMost for alternatives) with CNF patterns
+			this.roots[i] = formulas.eliminateNonCNFOperators(roots[i], encoding);
+			addVariables(this.roots[i], visited);
+		}
+	}
+
+	/**
+	 * Creates a writer for the given nodes that projects away all variables except the given ones,
+	 * and numbers the given variables first, even if they do not occur in the nodes
+	 * (e.g., unconstrained features of a slice).
+	 * The nodes in the list are replaced with null, so they can be garbage-collected early.
+	 *
+	 * @param nodes         the nodes
+	 * @param encoding      the encoding for at-most-one constraints
+	 * @param keptVariables the names of the variables to list in the directory, or null for all
+	 * @param variables     the names of the variables to number first
+	 */
+	SatWriter(List<Node> nodes, CardinalityEncoding encoding, Set<String> keptVariables, Collection<String> variables) {
+		formulas = new FormulaArena();
+		this.keptVariables = keptVariables;
+		for (String variable : variables)
+			addVariable(variable);
+		roots = new int[nodes.size()];
+		BitSet visited = new BitSet();
+		for (int i = 0; i < roots.length; i++) {
+			// replace nonstandard operators (usually, only AtMost for alternatives) with CNF patterns
+			roots[i] = formulas.eliminateNonCNFOperators(nodes.get(i), encoding);
+			nodes.set(i, null);
+			addVariables(roots[i], visited);
+		}
+	}
+
+	/**
+	 * Numbers the variables of a formula in the order they are written.
+	 * Subformulas that were visited before contain no new variables, so they are skipped.
+	 */
+	private void addVariables(int formula, BitSet visited) {
+		if (visited.get(formula))
+			return;
+		visited.set(formula);
+		if (formulas.getOperator(formula) == FormulaArena.LITERAL) {
+			int index = formulas.getVariableIndex(formula);
+			if (numbers.length <= index)
+				numbers = Arrays.copyOf(numbers, Math.max(formulas.getVariableCount(), 2 * numbers.length));
+			if (numbers[index] == 0)
+				numbers[index] = addVariable(getKey(formulas.getVariable(formula)));
+		} else {
+			for (int i = 0; i < formulas.getOperandCount(formula); i++)
+				addVariables(formulas.getOperand(formula, i), visited);
+		}
+	}
+
+	private int addVariable(Object variable) {
+		Integer number = variableMap.get(variable);
+		if (number == null) {
+			number = variableMap.size() + 1;
+			variableMap.put(variable, number);
+			variables.add(variable);
+		}
+		return number;
+	}
+
+	/**
+	 * Sets the equivalences whose members are listed after their representatives in the variable directory (see {@link Equivalences#write}).
+	 */
+	void setEquivalences(Equivalences equivalences) {
+		this.equivalences = equivalences;
+	}
+
+	/**
+	 * Sets a note that is written as a comment before the variable directory (e.g., on the fallback of a slice, see {@link Slicer#getFallbackNote()}).
+	 */
+	void setNote(String note) {
+		this.note = note;
+	}
+
+	/**
+	 * Writes the .sat file into a channel, encoding variable names with the given charset.
+	 * The channel is not closed.
+	 */
+	void write(WritableByteChannel channel, Charset charset) throws IOException {
+		out = new OutputBuffer(channel);
+		if (note != null)
+			DimacsHeader.writeComment(out, note, charset);
+		for (int i = 0; i < variables.size(); i++) {
+			if (variables.get(i) instanceof AuxiliaryVariable || (keptVariables != null && !keptVariables.contains(variables.get(i))))
+				continue;
+			DimacsHeader.writeVariable(out, i + 1, (String) variables.get(i), equivalences, charset);
+		}
+		out.put(PROBLEM);
+		out.putInt(variables.size());
+		out.put(FORMULA);
+		for (int i = 0; i < roots.length; i++) {
+			if (i > 0)
+				out.put(SEPARATOR);
+			writeFormula(roots[i]);
+		}
+		out.put((byte) ')');
+		out.flush();
+	}
+
+	private void writeFormula(int formula) throws IOException {
+		byte operator = formulas.getOperator(formula);
+		if (operator == FormulaArena.NOT && formulas.getOperator(formulas.getOperand(formula, 0)) == FormulaArena.LITERAL) {
+			int literal = formulas.getOperand(formula, 0);
+			writeLiteral(literal, !formulas.isPositive(literal));
+		} else if (operator == FormulaArena.LITERAL) {
+			writeLiteral(formula, formulas.isPositive(formula));
+		} else {
+			int operandCount = formulas.getOperandCount(formula);
+			if (operandCount == 0) {
+				out.put((byte) '(');
+				out.put((byte) ')');
+				return;
+			}
+			putOperator(operator);
+			out.put((byte) '(');
+			for (int i = 0; i < operandCount; i++) {
+				if (i > 0)
+					out.put((byte) ' ');
+				writeFormula(formulas.getOperand(formula, i));
+			}
+			out.put((byte) ')');
+		}
+	}
+
+	private void writeLiteral(int literal, boolean positive) throws IOException {
+		if (!positive)
+			out.put((byte) '-');
+		out.putInt(numbers[formulas.getVariableIndex(literal)]);
+	}
+
+	/**
+	 * Returns the key of a variable, which is its name unless it is auxiliary.
+	 */
+	private static Object getKey(Object variable) {
+		return variable instanceof AuxiliaryVariable ? variable : String.valueOf(variable);
+	}
+
+	private void putOperator(byte operator) throws IOException {
+		if (operator == FormulaArena.NOT)
+			out.put((byte) '-');
+		else if (operator == FormulaArena.AND)
+			out.put((byte) '*');
+		else if (operator == FormulaArena.OR)
+			out.put((byte) '+');
+		else
+			throw new IllegalArgumentException("unsupported operator " + operator);
+	}
+}
@@ -0,0 +1,204 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.ProtocolException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Long-running conversion server listening on a Unix domain socket.
+ * Avoids paying for JVM startup and FeatureIDE initialization on every conversion.
+ * Each connection is served on its own virtual thread, so concurrent clients are converted in parallel.
+ *
+ * <p>A connection carries any number of requests, each answered by one response before the next request is read.
+ * All integers are big-endian, and all strings are length-prefixed UTF-8:
+ * <pre>
+ * request  := int argc, string[argc] args, string contents
+ * response := payload, byte status, [string message]
+ * payload  := chunk*, int 0
+ * chunk    := int length, byte[length] bytes
+ * string   := int length, byte[length] bytes
+ * </pre>
+ * The arguments are the same as on the command line (e.g., {@code /path/to/model.uvl sat a,b} or {@code -.model dimacs}),
+ * except that an input file must be given by an absolute path, as the server does not know the working directory of its client.
+ * The contents are only read if the first argument denotes standard input, and have length -1 otherwise.
+ * The payload is the converted file, streamed in chunks of positive length as it is written, so it is never buffered as a whole
+ * and may exceed 2 GB. As the outcome is only known afterwards, the status follows the payload.
+ * It is {@link #SUCCESS}, or {@link #FAILURE} followed by an error message, in which case the payload is incomplete and must be discarded
+ * (e.g., for a missing input file or a relative path).
+ * A malformed request (e.g., a negative argument count or an oversized string) is answered with an empty payload and {@link #FAILURE},
+ * and the connection is closed afterwards, as the rest of the stream can no longer be framed.
+ */
+public class Server {
+	static final byte SUCCESS = 0;
+	static final byte FAILURE = 1;
+	// bounds for requests, so that a malformed request cannot make us allocate huge arrays on the shared heap
+	private static final int MAX_ARGUMENT_COUNT = 1 << 10;
+	private static final int MAX_STRING_LENGTH = 1 << 28;
+
+	private final Path socketPath;
+
+	Server(Path socketPath) {
+		this.socketPath = socketPath;
+	}
+
+	void serve() throws IOException {
+		Files.deleteIfExists(socketPath);
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+			socketPath.toFile().deleteOnExit();
+			while (true) {
+				SocketChannel channel = serverChannel.accept();
+				Thread.ofVirtual().name("io-" + channel.hashCode()).start(() -> handle(channel));
+			}
+		}
+	}
+
+	private void handle(SocketChannel channel) {
+		try (channel;
+			 DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+			while (true) {
+				int argc;
+				try {
+					argc = in.readInt();
+				} catch (EOFException e) {
+					return;
+				}
+				String[] args;
+				String contents;
+				try {
+					if (argc < 0 || argc > MAX_ARGUMENT_COUNT)
+						throw new ProtocolException("invalid argument count " + argc);
+					args = new String[argc];
+					for (int i = 0; i < argc; i++)
+						args[i] = readString(in);
+					contents = readString(in);
+				} catch (ProtocolException | OutOfMemoryError e) {
+					out.writeInt(0);
+					fail(out, e.toString());
+					return;
+				}
+
+				ChunkedChannel payload = new ChunkedChannel(out);
+				try {
+					checkInputPath(args);
+					new Conversion(args, contents).run(payload, StandardCharsets.UTF_8);
+				} catch (Throwable e) {
+					// the client hung up mid-response, nothing left to answer
+					if (payload.isBroken())
+						return;
+					// also report errors (e.g., running out of memory on a large model), so every request gets a response
+					StringWriter message = new StringWriter();
+					e.printStackTrace(new PrintWriter(message));
+					out.writeInt(0);
+					fail(out, message.toString());
+					continue;
+				}
+				out.writeInt(0);
+				out.writeByte(SUCCESS);
+				out.flush();
+			}
+		} catch (IOException e) {
+			// the client hung up mid-request, nothing left to answer
+		}
+	}
+
+	/**
+	 * Rejects a relative input path, which would be resolved against the working directory of the server instead of the client.
+	 */
+	private static void checkInputPath(String[] args) {
+		if (Conversion.readsStandardInput(args))
+			return;
+		String inputPath = new Options(args).getArguments()[0];
+		if (!Paths.get(inputPath).isAbsolute())
+			throw new IllegalArgumentException("input path " + inputPath + " is not absolute");
+	}
+
+	/**
+	 * Ends a response with {@link #FAILURE} and the given error message, after the payload has been ended.
+	 */
+	private static void fail(DataOutputStream out, String message) throws IOException {
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		out.writeByte(FAILURE);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		out.flush();
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1)
+			return null;
+		if (length < -1 || length > MAX_STRING_LENGTH)
+			throw new ProtocolException("invalid string length " + length);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Channel that writes everything written into it as chunks of the payload of a response.
+	 */
+	private static class ChunkedChannel implements WritableByteChannel {
+		private final DataOutputStream out;
+		private boolean broken;
+
+		ChunkedChannel(DataOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public int write(ByteBuffer buffer) throws IOException {
+			int length = buffer.remaining();
+			if (length == 0)
+				return 0;
+			try {
+				out.writeInt(length);
+				if (buffer.hasArray()) {
+					out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+					buffer.position(buffer.limit());
+				} else {
+					byte[] bytes = new byte[length];
+					buffer.get(bytes);
+					out.write(bytes);
+				}
+			} catch (IOException e) {
+				broken = true;
+				throw e;
+			}
+			return length;
+		}
+
+		/**
+		 * Returns whether writing into the connection has failed, so the response cannot be completed.
+		 */
+		boolean isBroken() {
+			return broken;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+			// the connection stays open for the status and further requests
+		}
+	}
+}
@@ -0,0 +1,155 @@
+import de.ovgu.featureide.fm.core.base.IConstraint;
+import de.ovgu.featureide.fm.core.base.IFeatureModel;
+import org.prop4j.Literal;
+import org.prop4j.Node;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The simplifications of the constraints requested by the options of a conversion, that is,
+ * removing redundant constraints (see {@link Redundancy}), substituting the backbone (see {@link Backbone}),
+ * collapsing equivalent features (see {@link Equivalences}), and pruning constraints outside a cone of influence (see {@link ConeOfInfluence}).
+ * Statistics on each simplification are written into a report.
+ */
+public class Simplification {
+	private final Options options;
+	private final Report report;
+	// the equivalences collapsed by apply, if any
+	private Equivalences equivalences;
+
+	Simplification(Options options, Report report) {
+		this.options = options;
+		this.report = report;
+	}
+
+	/**
+	 * Returns whether any simplification is requested, so the nodes need to be transformed before writing them.
+	 */
+	boolean isRequested() {
+		return options.isRedundancyRemoved() || options.isBackbone() || options.getEquivalenceDetection() != EquivalenceDetection.NONE;
+	}
+
+	/**
+	 * Returns the equivalences collapsed by {@link #apply}, or null if none were.
+	 */
+	Equivalences getEquivalences() {
+		return equivalences;
+	}
+
+	/**
+	 * Returns the nodes with the backbone substituted and equivalent features collapsed, if so requested,
+	 * and pruned to the cone of influence of the kept variables, if any (otherwise, pruning only substitutes the backbone).
+	 * Redundant constraints are not removed here, as this depends on which nodes describe the feature tree.
+	 *
+	 * @param nodes         the nodes
+	 * @param encoding      the encoding for at-most-one constraints
+	 * @param names         the names of the variables, from which collapsed features are removed
+	 * @param keptVariables the variables to keep, which are preferred as representatives of equivalent features, or null for all
+	 */
+	List<Node> apply(List<Node> nodes, CardinalityEncoding encoding, Collection<String> names, Set<String> keptVariables) {
+		if (options.isBackbone())
+			nodes = addBackbone(nodes, encoding);
+		if (options.getEquivalenceDetection() != EquivalenceDetection.NONE)
+			nodes = collapse(nodes, encoding, names, keptVariables);
+		if (keptVariables != null)
+			return prune(nodes, encoding, keptVariables);
+		if (options.isBackbone())
+			return prune(nodes, encoding, new LinkedHashSet<>(names));
+		return nodes;
+	}
+
+	/**
+	 * Returns the nodes with non-CNF operators eliminated and a unit constraint for each literal of their backbone (i.e., each core and dead feature).
+	 * Pruning the result (see {@link #prune}) substitutes these literals into the other constraints.
+	 */
+	private List<Node> addBackbone(List<Node> nodes, CardinalityEncoding encoding) {
+		List<Node> constraints = eliminateNonCNFOperators(nodes, encoding);
+		Backbone backbone = new Backbone(constraints);
+		List<Literal> literals = backbone.compute();
+		backbone.report(report, literals);
+		constraints.addAll(literals);
+		return constraints;
+	}
+
+	/**
+	 * Returns the nodes with each class of equivalent features collapsed into its representative, as detected by the chosen method.
+	 */
+	private List<Node> collapse(List<Node> nodes, CardinalityEncoding encoding, Collection<String> names, Set<String> keptVariables) {
+		equivalences = new Equivalences(eliminateNonCNFOperators(nodes, encoding), keptVariables);
+		nodes = equivalences.collapse(options.getEquivalenceDetection());
+		equivalences.report(report);
+		names.removeIf(equivalences::isCollapsed);
+		return nodes;
+	}
+
+	/**
+	 * Returns the nodes in the cone of influence of the given variables, with non-CNF operators eliminated.
+	 * If all variables are given, this only substitutes the variables fixed by unit constraints (e.g., the backbone).
+	 */
+	private List<Node> prune(List<Node> nodes, CardinalityEncoding encoding, Set<String> keptVariables) {
+		ConeOfInfluence coneOfInfluence = new ConeOfInfluence(eliminateNonCNFOperators(nodes, encoding), keptVariables);
+		List<Node> relevantNodes = coneOfInfluence.prune();
+		coneOfInfluence.report(report);
+		return relevantNodes;
+	}
+
+	/**
+	 * Removes the cross-tree constraints of a feature model that are implied by its feature tree and the other constraints.
+	 */
+	void removeRedundantConstraints(IFeatureModel featureModel) {
+		List<IConstraint> constraints = new ArrayList<>(featureModel.getConstraints());
+		List<Node> nodes = NodeUtils.getNodes(featureModel);
+		boolean[] redundant = findRedundantConstraints(nodes, nodes.size() - constraints.size());
+		for (int i = 0; i < redundant.length; i++)
+			if (redundant[i])
+				featureModel.removeConstraint(constraints.get(i));
+	}
+
+	/**
+	 * Returns the feature tree without the cross-tree constraints that are implied by the feature tree and the other constraints.
+	 */
+	FeatureTree removeRedundantConstraints(FeatureTree featureTree) {
+		List<Node> nodes = featureTree.getNodes();
+		int treeNodes = nodes.size() - featureTree.getConstraintCount();
+		removeRedundantConstraints(nodes, treeNodes);
+		return featureTree.withConstraints(new ArrayList<>(nodes.subList(treeNodes, nodes.size())));
+	}
+
+	/**
+	 * Removes the constraints (i.e., the nodes after the given number of nodes for the feature tree)
+	 * that are implied by the feature tree and the other constraints.
+	 */
+	void removeRedundantConstraints(List<Node> nodes, int treeNodes) {
+		boolean[] redundant = findRedundantConstraints(nodes, treeNodes);
+		for (int i = redundant.length - 1; i >= 0; i--)
+			if (redundant[i])
+				nodes.remove(treeNodes + i);
+	}
+
+	private boolean[] findRedundantConstraints(List<Node> nodes, int treeNodes) {
+		List<Node> constraints = nodes.subList(treeNodes, nodes.size());
+		Redundancy redundancy = new Redundancy(eliminateNonCNFOperators(nodes.subList(0, treeNodes), options.getCardinalityEncoding()),
+				eliminateNonCNFOperators(constraints, options.getCardinalityEncoding()));
+		boolean[] redundant = redundancy.compute();
+		redundancy.report(report, constraints, redundant);
+		return redundant;
+	}
+
+	static List<Node> eliminateNonCNFOperators(List<Node> nodes, CardinalityEncoding encoding) {
+		List<Node> constraints = new ArrayList<>(nodes.size());
+		for (Node node : nodes)
+			constraints.add(NodeUtils.eliminateNonCNFOperators(node, encoding));
+		return constraints;
+	}
+
+	static Set<String> getNames(List<Node> nodes) {
+		Set<String> names = new LinkedHashSet<>();
+		for (Node node : nodes)
+			names.addAll(node.getUniqueContainedFeatures());
+		return names;
+	}
+}
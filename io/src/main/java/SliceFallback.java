@@ -0,0 +1,22 @@
+/**
+ * Fallbacks for slicing when the time or memory budget for eliminating removed features is exceeded.
+ */
+public enum SliceFallback {
+	/**
+	 * Projects away the removed features not eliminated yet, as with {@link SliceMode#PROJECT}.
+	 * The slice is still written, but only projected model counters count it correctly.
+	 * The fallback is noted in a comment of the written file and in the report.
+	 */
+	PROJECT,
+	/**
+	 * Fails, so no slice is written (e.g., for callers that count without projection, such as clausy).
+	 */
+	FAIL;
+
+	static SliceFallback parse(String name) {
+		for (SliceFallback fallback : values())
+			if (fallback.name().equalsIgnoreCase(name))
+				return fallback;
+		throw new RuntimeException("invalid slice fallback " + name);
+	}
+}
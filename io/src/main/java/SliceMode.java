@@ -0,0 +1,25 @@
+/**
+ * Modes for slicing a feature model to the features to keep.
+ */
+public enum SliceMode {
+	/**
+	 * Eliminates the removed features, so the result is a formula over the kept features only.
+	 * Elimination may take exponential time, but the result can be processed by any tool.
+	 */
+	ELIMINATE,
+	/**
+	 * Keeps the full formula, but marks the removed features as auxiliary, so they are projected away.
+	 * This takes linear time, but only projected model counters (e.g., d4 in projected mode, which reads the {@code c p show} line of a DIMACS file)
+	 * get the same counts as for an eliminated slice.
+	 * Other tools count the models of the full formula instead; in particular, clausy reads auxiliary variables as free and counts without projection.
+	 * Only supported for .sat and DIMACS output.
+	 */
+	PROJECT;
+
+	static SliceMode parse(String name) {
+		for (SliceMode mode : values())
+			if (mode.name().equalsIgnoreCase(name))
+				return mode;
+		throw new RuntimeException("invalid slice mode " + name);
+	}
+}
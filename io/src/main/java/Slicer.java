@@ -0,0 +1,1136 @@
+import de.ovgu.featureide.fm.core.analysis.cnf.CNF;
+import de.ovgu.featureide.fm.core.analysis.cnf.LiteralSet;
+import de.ovgu.featureide.fm.core.analysis.cnf.Variables;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Slicer that removes variables from a CNF by resolution (i.e., Davis-Putnam variable elimination), which replaces FeatureIDE's CNFSlicer.
+ * The result is equivalent to the existential quantification of the removed variables, so the kept variables have the same solutions as before.
+ *
+ * <p>Clauses are stored in a primitive int arena, with an occurrence list per literal, so no objects are created per clause.
+ * Variables are eliminated in order of the clause growth they cause, which is updated as elimination proceeds,
+ * unless an order is planned by {@link EliminationPlanner}.
+ * Tautologies are dropped, and resolvents are checked for subsumption in both directions.
+ * Resolvents that follow from the other clauses by unit propagation (i.e., asymmetric tautologies) are dropped as well,
+ * which keeps the clause growth in check. Both checks have a bounded effort per clause.
+ * As in CNFSlicer, elimination stops once no clause mixes kept and removed variables,
+ * as the remaining clauses over removed variables only matter for satisfiability, which a SAT solver decides faster.
+ * Alternatively, removed variables can be projected away instead of eliminated, which keeps all clauses.
+ * Elimination may also be given a budget of time and memory, after which the variables not eliminated yet are projected away.
+ *
+ * <p>Clauses that share no removed variables never meet in a resolution, so large CNFs are split into chunks of such components,
+ * which are sliced in parallel, about one per available core. Their slices are merged in the order of the chunks, so the result is deterministic.
+ */
+public class Slicer {
+	private static final int SUBSUMPTION_BUDGET = 1 << 12;
+	private static final int PROPAGATION_BUDGET = 1 << 12;
+	/**
+	 * Maximum number of resolution pairs for bounded variable elimination, and maximum number of rounds of simplification.
+	 */
+	private static final int RESOLUTION_LIMIT = 1 << 10;
+	private static final int SIMPLIFICATION_ROUNDS = 8;
+	/**
+	 * Minimum number of clauses per chunk, smaller chunks are not worth slicing in parallel.
+	 * Can be lowered with the system property {@code io.minChunkClauses} (e.g., so the regression check slices small files in chunks).
+	 */
+	private static final int MIN_CHUNK_CLAUSES = Math.max(1, Integer.getInteger("io.minChunkClauses", 1 << 10));
+	/**
+	 * Estimated memory per live literal, which is stored in the arena and an occurrence list, both of which grow by doubling.
+	 */
+	private static final int BYTES_PER_LITERAL = 16;
+
+	/**
+	 * The slice of a chunk of components, with clauses over the variables of the slicer that split the chunk off.
+	 */
+	private static final class ChunkSlice {
+		final Slicer slicer;
+		final List<int[]> clauses = new ArrayList<>();
+		final List<Integer> eliminatedVariables = new ArrayList<>();
+
+		ChunkSlice(Slicer slicer) {
+			this.slicer = slicer;
+		}
+	}
+
+	private final String[] names;
+	private final boolean[] removed;
+	private final int removedCount;
+	// literals of all clauses, including deleted ones until the arena is compacted
+	private int[] arena = new int[1 << 12];
+	private int arenaSize;
+	private int liveLiterals;
+	// start and length of each clause in the arena, the length is complemented for deleted clauses
+	private int[] clauseStarts = new int[1 << 10];
+	private int[] clauseLengths = new int[1 << 10];
+	private int clauseCount;
+	private int liveClauses;
+	private int mixedClauses;
+	private int peakClauses;
+	// clauses per literal (which may be deleted) and number of live clauses per literal, indexed by literalIndex
+	private final int[][] occurrences;
+	private final int[] occurrenceSizes;
+	private final int[] liveOccurrences;
+	// the literal of each variable in the clause currently being checked, 0 if none
+	private final int[] marks;
+	private int[] scratch = new int[64];
+	// the true literal of each variable during unit propagation, 0 if unassigned, and the order of assignment
+	private final int[] values;
+	private final int[] trail;
+	// removed variables that are not eliminated yet, as a binary min-heap ordered by getGrowth
+	private final int[] heap;
+	private final int[] heapPositions;
+	private int heapSize;
+	// variables to eliminate first, in this order, as planned by EliminationPlanner
+	private int[] order = new int[0];
+	private int eliminated;
+	private final boolean[] eliminatedVariables;
+	private int chunks = 1;
+	// budget for elimination as a System.nanoTime() deadline (0 if none) and a maximum number of live literals
+	private long timeBudget;
+	private long deadline;
+	private long literalBudget = Long.MAX_VALUE;
+	private String exhaustedBudget;
+	private boolean projected;
+	private boolean unsatisfiable;
+	// statistics on simplification, the clauses and literals before are -1 if not simplified
+	private int simplifiedClauses = -1;
+	private int simplifiedLiterals = -1;
+	private int subsumedClauses;
+	private int strengthenedClauses;
+	private int boundedEliminations;
+	private Equivalences equivalences;
+
+	/**
+	 * Creates a slicer for a CNF without clauses.
+	 *
+	 * @param names            the names of the variables, starting at index 1 (as returned by FeatureIDE's Variables)
+	 * @param removedVariables the names of the variables to remove, other names are ignored
+	 */
+	Slicer(String[] names, Collection<String> removedVariables) {
+		this(names, getRemoved(names, removedVariables));
+	}
+
+	/**
+	 * Creates a slicer for a CNF without clauses.
+	 *
+	 * @param names   the names of the variables, starting at index 1, which may be null for removed variables (e.g., auxiliary variables)
+	 * @param removed whether each variable is removed, starting at index 1
+	 */
+	Slicer(String[] names, boolean[] removed) {
+		this.names = names;
+		this.removed = removed;
+		int variableCount = names.length - 1;
+		heap = new int[variableCount];
+		heapPositions = new int[variableCount + 1];
+		Arrays.fill(heapPositions, -1);
+		int count = 0;
+		for (int variable = 1; variable <= variableCount; variable++) {
+			if (removed[variable]) {
+				heapPositions[variable] = heapSize;
+				heap[heapSize++] = variable;
+				count++;
+			}
+		}
+		removedCount = count;
+		occurrences = new int[2 * variableCount + 2][];
+		occurrenceSizes = new int[2 * variableCount + 2];
+		liveOccurrences = new int[2 * variableCount + 2];
+		marks = new int[variableCount + 1];
+		eliminatedVariables = new boolean[variableCount + 1];
+		values = new int[variableCount + 1];
+		trail = new int[variableCount];
+	}
+
+	private static boolean[] getRemoved(String[] names, Collection<String> removedVariables) {
+		Set<String> removedSet = new HashSet<>(removedVariables);
+		boolean[] removed = new boolean[names.length];
+		for (int variable = 1; variable < names.length; variable++)
+			removed[variable] = removedSet.contains(names[variable]);
+		return removed;
+	}
+
+	private static int literalIndex(int literal) {
+		return literal > 0 ? 2 * literal : -2 * literal + 1;
+	}
+
+	/**
+	 * Adds a clause of the CNF to slice. Must not be called after {@link #slice()}.
+	 */
+	void addClause(int[] literals) {
+		ensureScratch(literals.length);
+		System.arraycopy(literals, 0, scratch, 0, literals.length);
+		addClause(literals.length);
+	}
+
+	private void ensureScratch(int length) {
+		if (scratch.length < length)
+			scratch = Arrays.copyOf(scratch, Math.max(length, 2 * scratch.length));
+	}
+
+	/**
+	 * Adds the clause in the scratch buffer, unless it is a tautology or (if not projected) redundant.
+	 * Clauses that it subsumes are deleted.
+	 */
+	private void addClause(int length) {
+		int size = 0;
+		boolean tautology = false;
+		for (int i = 0; i < length && !tautology; i++) {
+			int literal = scratch[i];
+			int mark = marks[Math.abs(literal)];
+			if (mark == -literal) {
+				tautology = true;
+			} else if (mark == 0) {
+				marks[Math.abs(literal)] = literal;
+				scratch[size++] = literal;
+			}
+		}
+		if (!tautology) {
+			if (size == 0)
+				unsatisfiable = true;
+			else if (projected) {
+				storeClause(size);
+			} else if (!isSubsumed(size) && !isImplied(size)) {
+				deleteSubsumed(size);
+				storeClause(size);
+			}
+		}
+		for (int i = 0; i < size; i++)
+			marks[Math.abs(scratch[i])] = 0;
+	}
+
+	/**
+	 * Returns whether a live clause is a subset of the marked clause in the scratch buffer.
+	 * Such a clause shares at least one literal with the marked clause, so the occurrence lists of its literals are searched.
+	 */
+	private boolean isSubsumed(int size) {
+		int budget = SUBSUMPTION_BUDGET;
+		for (int i = 0; i < size && budget > 0; i++) {
+			int index = literalIndex(scratch[i]);
+			for (int j = 0; j < occurrenceSizes[index] && budget-- > 0; j++) {
+				int clause = occurrences[index][j];
+				int length = clauseLengths[clause];
+				if (length < 0 || length > size)
+					continue;
+				int start = clauseStarts[clause];
+				boolean subset = true;
+				for (int k = start; k < start + length && subset; k++)
+					subset = marks[Math.abs(arena[k])] == arena[k];
+				if (subset)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the clause in the scratch buffer follows from the live clauses by unit propagation,
+	 * that is, whether propagating the negation of all its literals yields a conflict.
+	 */
+	private boolean isImplied(int size) {
+		int trailSize = 0;
+		for (int i = 0; i < size; i++) {
+			values[Math.abs(scratch[i])] = -scratch[i];
+			trail[trailSize++] = -scratch[i];
+		}
+		int budget = PROPAGATION_BUDGET;
+		boolean conflict = false;
+		for (int head = 0; head < trailSize && !conflict && budget > 0; head++) {
+			// only clauses with the falsified literal can become unit or conflicting
+			int index = literalIndex(-trail[head]);
+			for (int j = 0; j < occurrenceSizes[index] && !conflict && budget > 0; j++) {
+				int clause = occurrences[index][j];
+				int length = clauseLengths[clause];
+				if (length < 0)
+					continue;
+				budget -= length;
+				int start = clauseStarts[clause], unassigned = 0, last = 0;
+				boolean satisfied = false;
+				for (int k = start; k < start + length && !satisfied; k++) {
+					int value = values[Math.abs(arena[k])];
+					if (value == arena[k])
+						satisfied = true;
+					else if (value == 0) {
+						unassigned++;
+						last = arena[k];
+					}
+				}
+				if (satisfied || unassigned > 1)
+					continue;
+				if (unassigned == 0) {
+					conflict = true;
+				} else {
+					values[Math.abs(last)] = last;
+					trail[trailSize++] = last;
+				}
+			}
+		}
+		for (int i = 0; i < trailSize; i++)
+			values[Math.abs(trail[i])] = 0;
+		return conflict;
+	}
+
+	/**
+	 * Deletes all live clauses that are supersets of the marked clause in the scratch buffer.
+	 * Such clauses contain every literal of the marked clause, so only the shortest occurrence list is searched.
+	 */
+	private void deleteSubsumed(int size) {
+		int index = literalIndex(scratch[0]);
+		for (int i = 1; i < size; i++)
+			if (liveOccurrences[literalIndex(scratch[i])] < liveOccurrences[index])
+				index = literalIndex(scratch[i]);
+		if (liveOccurrences[index] > SUBSUMPTION_BUDGET)
+			return;
+		compactOccurrences(index);
+		for (int j = 0; j < occurrenceSizes[index]; j++) {
+			int clause = occurrences[index][j];
+			int length = clauseLengths[clause];
+			if (length < size)
+				continue;
+			int start = clauseStarts[clause], matches = 0;
+			for (int k = start; k < start + length; k++)
+				if (marks[Math.abs(arena[k])] == arena[k])
+					matches++;
+			if (matches == size)
+				deleteClause(clause);
+		}
+	}
+
+	private void storeClause(int size) {
+		if (arenaSize + size > arena.length) {
+			if (arenaSize - liveLiterals > liveLiterals)
+				compactArena();
+			if (arenaSize + size > arena.length)
+				arena = Arrays.copyOf(arena, Math.max(arenaSize + size, 2 * arena.length));
+		}
+		if (clauseCount == clauseStarts.length) {
+			clauseStarts = Arrays.copyOf(clauseStarts, 2 * clauseStarts.length);
+			clauseLengths = Arrays.copyOf(clauseLengths, 2 * clauseLengths.length);
+		}
+		int clause = clauseCount++;
+		clauseStarts[clause] = arenaSize;
+		clauseLengths[clause] = size;
+		System.arraycopy(scratch, 0, arena, arenaSize, size);
+		arenaSize += size;
+		liveLiterals += size;
+		for (int i = 0; i < size; i++) {
+			int index = literalIndex(scratch[i]);
+			if (occurrences[index] == null)
+				occurrences[index] = new int[4];
+			else if (occurrenceSizes[index] == occurrences[index].length)
+				occurrences[index] = Arrays.copyOf(occurrences[index], 2 * occurrenceSizes[index]);
+			occurrences[index][occurrenceSizes[index]++] = clause;
+			liveOccurrences[index]++;
+			updateHeap(Math.abs(scratch[i]));
+		}
+		if (isMixed(clause))
+			mixedClauses++;
+		liveClauses++;
+		peakClauses = Math.max(peakClauses, liveClauses);
+	}
+
+	private void deleteClause(int clause) {
+		int length = clauseLengths[clause], start = clauseStarts[clause];
+		if (isMixed(clause))
+			mixedClauses--;
+		clauseLengths[clause] = ~length;
+		for (int k = start; k < start + length; k++) {
+			liveOccurrences[literalIndex(arena[k])]--;
+			updateHeap(Math.abs(arena[k]));
+		}
+		liveLiterals -= length;
+		liveClauses--;
+	}
+
+	private boolean isMixed(int clause) {
+		int length = Math.max(clauseLengths[clause], ~clauseLengths[clause]), start = clauseStarts[clause];
+		int removedLiterals = 0;
+		for (int k = start; k < start + length; k++)
+			if (removed[Math.abs(arena[k])])
+				removedLiterals++;
+		return removedLiterals > 0 && removedLiterals < length;
+	}
+
+	/**
+	 * Removes deleted clauses from an occurrence list.
+	 */
+	private void compactOccurrences(int index) {
+		int size = 0;
+		for (int j = 0; j < occurrenceSizes[index]; j++)
+			if (clauseLengths[occurrences[index][j]] >= 0)
+				occurrences[index][size++] = occurrences[index][j];
+		occurrenceSizes[index] = size;
+	}
+
+	/**
+	 * Moves the literals of live clauses to the front of the arena, so the space of deleted clauses can be reused.
+	 */
+	private void compactArena() {
+		int size = 0;
+		for (int clause = 0; clause < clauseCount; clause++) {
+			int length = clauseLengths[clause];
+			if (length < 0)
+				continue;
+			System.arraycopy(arena, clauseStarts[clause], arena, size, length);
+			clauseStarts[clause] = size;
+			size += length;
+		}
+		arenaSize = size;
+	}
+
+	/**
+	 * Returns how many clauses eliminating a variable adds (at most, as tautologies and subsumed resolvents are dropped).
+	 */
+	private long getGrowth(int variable) {
+		long positive = liveOccurrences[2 * variable], negative = liveOccurrences[2 * variable + 1];
+		return positive * negative - positive - negative;
+	}
+
+	/**
+	 * Sets the equivalences whose members are listed after their representatives in the variable directory (see {@link Equivalences#write}).
+	 */
+	void setEquivalences(Equivalences equivalences) {
+		this.equivalences = equivalences;
+	}
+
+	/**
+	 * Sets the variables to eliminate first, in the given order (e.g., as planned by {@link EliminationPlanner}).
+	 * Other removed variables are eliminated afterwards, in order of their clause growth.
+	 */
+	void setOrder(int[] variables) {
+		order = variables;
+	}
+
+	/**
+	 * Sets a budget for elimination. Once it is exceeded, the variables not eliminated yet are projected away instead.
+	 * The budget is checked while resolvents are added, so it is exceeded by at most one resolvent.
+	 *
+	 * @param nanoseconds the time for slicing, 0 for no limit
+	 * @param bytes       the (estimated) memory for the live clauses, 0 for no limit
+	 */
+	void setBudget(long nanoseconds, long bytes) {
+		timeBudget = nanoseconds;
+		literalBudget = bytes > 0 ? bytes / BYTES_PER_LITERAL : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns which budget was exceeded while slicing ("time" or "memory"), or null if none was.
+	 */
+	String getExhaustedBudget() {
+		return exhaustedBudget;
+	}
+
+	/**
+	 * Returns a note on the removed variables projected away after exceeding the budget, or null if the budget was not exceeded.
+	 * The note is written as a comment into the sliced file, so the fallback is visible without a report.
+	 */
+	String getFallbackNote() {
+		return exhaustedBudget == null ? null
+				: String.format("projected away %d removed variables after exceeding the %s budget", removedCount - eliminated, exhaustedBudget);
+	}
+
+	/**
+	 * Returns whether the budget is exceeded, and if so, remembers which one.
+	 */
+	private boolean isOverBudget() {
+		if (deadline != 0 && System.nanoTime() - deadline > 0)
+			exhaustedBudget = "time";
+		else if (liveLiterals > literalBudget)
+			exhaustedBudget = "memory";
+		return exhaustedBudget != null;
+	}
+
+	/**
+	 * Eliminates all removed variables, or as many as needed to separate them from the kept variables.
+	 */
+	void slice() {
+		if (timeBudget > 0)
+			deadline = System.nanoTime() + timeBudget;
+		int[][] chunkClauses = getChunks();
+		if (chunkClauses.length > 1)
+			sliceChunks(chunkClauses);
+		else
+			sliceSequentially();
+	}
+
+	private void sliceSequentially() {
+		for (int i = 0; i < order.length && mixedClauses > 0 && !unsatisfiable && exhaustedBudget == null; i++) {
+			if (heapPositions[order[i]] >= 0) {
+				removeFromHeap(order[i]);
+				eliminate(order[i]);
+			}
+		}
+		while (heapSize > 0 && mixedClauses > 0 && !unsatisfiable && exhaustedBudget == null)
+			eliminate(removeFromHeap(heap[0]));
+		if (exhaustedBudget != null)
+			projected = true;
+		else if (!unsatisfiable && heapSize > 0)
+			unsatisfiable = !isSatisfiable(getRemainingClauses());
+	}
+
+	/**
+	 * Splits the live clauses with removed variables into chunks of components that share no removed variables, about one per available core.
+	 * Components are numbered in the order of their first clause and assigned to chunks of about equal size in that order.
+	 *
+	 * @return the clauses of each chunk, or a single empty chunk if slicing in parallel is not worth it
+	 */
+	private int[][] getChunks() {
+		int maximumChunks = Math.min(Runtime.getRuntime().availableProcessors(), liveClauses / MIN_CHUNK_CLAUSES);
+		if (maximumChunks < 2 || unsatisfiable)
+			return new int[1][0];
+		int[] parents = new int[names.length];
+		for (int variable = 1; variable < names.length; variable++)
+			parents[variable] = variable;
+		for (int clause = 0; clause < clauseCount; clause++) {
+			int first = 0;
+			for (int k = clauseStarts[clause]; k < clauseStarts[clause] + clauseLengths[clause]; k++) {
+				int variable = Math.abs(arena[k]);
+				if (!removed[variable])
+					continue;
+				if (first == 0)
+					first = find(parents, variable);
+				else
+					parents[find(parents, variable)] = first;
+			}
+		}
+		// components are numbered from 1, clauses without removed variables are in no component
+		int[] components = new int[names.length], clauseComponents = new int[clauseCount], componentSizes = new int[names.length + 1];
+		int componentCount = 0, componentClauses = 0;
+		for (int clause = 0; clause < clauseCount; clause++) {
+			for (int k = clauseStarts[clause]; k < clauseStarts[clause] + clauseLengths[clause]; k++) {
+				int variable = Math.abs(arena[k]);
+				if (removed[variable]) {
+					int root = find(parents, variable);
+					if (components[root] == 0)
+						components[root] = ++componentCount;
+					clauseComponents[clause] = components[root];
+					componentSizes[components[root]]++;
+					componentClauses++;
+					break;
+				}
+			}
+		}
+		int[] componentChunks = new int[componentCount + 1];
+		int chunk = 0, chunkClauses = 0;
+		for (int component = 1; component <= componentCount; component++) {
+			if (chunkClauses >= (long) componentClauses * (chunk + 1) / maximumChunks && chunk < maximumChunks - 1)
+				chunk++;
+			componentChunks[component] = chunk;
+			chunkClauses += componentSizes[component];
+		}
+		int[][] chunkClauseIndices = new int[chunk + 1][];
+		int[] chunkSizes = new int[chunk + 1];
+		for (int component = 1; component <= componentCount; component++)
+			chunkSizes[componentChunks[component]] += componentSizes[component];
+		for (int i = 0; i <= chunk; i++)
+			chunkClauseIndices[i] = new int[chunkSizes[i]];
+		Arrays.fill(chunkSizes, 0);
+		for (int clause = 0; clause < clauseCount; clause++) {
+			if (clauseComponents[clause] != 0) {
+				int i = componentChunks[clauseComponents[clause]];
+				chunkClauseIndices[i][chunkSizes[i]++] = clause;
+			}
+		}
+		return chunkClauseIndices;
+	}
+
+	private static int find(int[] parents, int variable) {
+		while (parents[variable] != variable) {
+			parents[variable] = parents[parents[variable]];
+			variable = parents[variable];
+		}
+		return variable;
+	}
+
+	/**
+	 * Slices each chunk with its own slicer in parallel, and replaces the clauses of all chunks with their slices.
+	 */
+	private void sliceChunks(int[][] chunkClauseIndices) {
+		chunks = chunkClauseIndices.length;
+		int[][][] chunkClauses = new int[chunks][][];
+		for (int i = 0; i < chunks; i++) {
+			chunkClauses[i] = new int[chunkClauseIndices[i].length][];
+			for (int j = 0; j < chunkClauseIndices[i].length; j++) {
+				int clause = chunkClauseIndices[i][j];
+				chunkClauses[i][j] = Arrays.copyOfRange(arena, clauseStarts[clause], clauseStarts[clause] + clauseLengths[clause]);
+				deleteClause(clause);
+			}
+		}
+		long chunkClauseCount = Arrays.stream(chunkClauses).mapToLong(clauses -> clauses.length).sum();
+		List<ChunkSlice> slices = IntStream.range(0, chunks).parallel()
+				.mapToObj(i -> sliceChunk(chunkClauses[i], literalBudget == Long.MAX_VALUE ? literalBudget
+						: (long) ((double) literalBudget * chunkClauses[i].length / chunkClauseCount)))
+				.collect(Collectors.toList());
+		int chunkPeakClauses = 0;
+		for (ChunkSlice slice : slices) {
+			eliminated += slice.slicer.eliminated;
+			for (int variable : slice.eliminatedVariables)
+				eliminatedVariables[variable] = true;
+			chunkPeakClauses += slice.slicer.peakClauses;
+			unsatisfiable |= slice.slicer.unsatisfiable;
+			if (slice.slicer.exhaustedBudget != null)
+				exhaustedBudget = slice.slicer.exhaustedBudget;
+		}
+		// clauses of chunks that exceeded the budget still contain removed variables, which are projected away
+		projected = exhaustedBudget != null;
+		peakClauses = Math.max(peakClauses, liveClauses + chunkPeakClauses);
+		// the chunks took over elimination, so the heap is emptied before their slices are added
+		heapSize = 0;
+		Arrays.fill(heapPositions, -1);
+		for (int i = 0; i < chunks && !unsatisfiable; i++) {
+			for (int[] clause : slices.get(i).clauses) {
+				ensureScratch(clause.length);
+				System.arraycopy(clause, 0, scratch, 0, clause.length);
+				addClause(clause.length);
+			}
+		}
+	}
+
+	/**
+	 * Slices a chunk of clauses with its own slicer over the variables in the chunk, which gets its share of the memory budget.
+	 */
+	private ChunkSlice sliceChunk(int[][] clauses, long literalBudget) {
+		int[] chunkVariables = new int[names.length];
+		List<String> chunkNames = new ArrayList<>();
+		List<String> chunkRemoved = new ArrayList<>();
+		chunkNames.add(null);
+		for (int[] clause : clauses) {
+			for (int literal : clause) {
+				int variable = Math.abs(literal);
+				if (chunkVariables[variable] == 0) {
+					chunkVariables[variable] = chunkNames.size();
+					chunkNames.add(names[variable]);
+					if (removed[variable])
+						chunkRemoved.add(names[variable]);
+				}
+			}
+		}
+		int[] variables = new int[chunkNames.size()];
+		for (int variable = 1; variable < names.length; variable++)
+			variables[chunkVariables[variable]] = variable;
+		Slicer slicer = new Slicer(chunkNames.toArray(new String[0]), chunkRemoved);
+		for (int[] clause : clauses) {
+			int[] chunkClause = new int[clause.length];
+			for (int k = 0; k < clause.length; k++)
+				chunkClause[k] = clause[k] > 0 ? chunkVariables[clause[k]] : -chunkVariables[-clause[k]];
+			slicer.addClause(chunkClause);
+		}
+		slicer.setOrder(Arrays.stream(order).filter(variable -> chunkVariables[variable] != 0).map(variable -> chunkVariables[variable]).toArray());
+		slicer.deadline = deadline;
+		slicer.literalBudget = literalBudget;
+		slicer.sliceSequentially();
+
+		ChunkSlice slice = new ChunkSlice(slicer);
+		for (int variable = 1; variable < variables.length; variable++)
+			if (slicer.eliminatedVariables[variable])
+				slice.eliminatedVariables.add(variables[variable]);
+		for (int clause = 0; clause < slicer.clauseCount && !slicer.unsatisfiable; clause++) {
+			if (slicer.isSliced(clause)) {
+				int[] sliced = Arrays.copyOfRange(slicer.arena, slicer.clauseStarts[clause], slicer.clauseStarts[clause] + slicer.clauseLengths[clause]);
+				for (int k = 0; k < sliced.length; k++)
+					sliced[k] = sliced[k] > 0 ? variables[sliced[k]] : -variables[-sliced[k]];
+				slice.clauses.add(sliced);
+			}
+		}
+		return slice;
+	}
+
+	/**
+	 * Projects away all removed variables instead of eliminating them. Must be called before clauses are added.
+	 * All clauses are kept as they are (except for tautologies and duplicate literals),
+	 * and removed variables are written as auxiliary variables, which takes linear time.
+	 */
+	void project() {
+		projected = true;
+	}
+
+	/**
+	 * Replaces all clauses that contain a variable by their resolvents on that variable.
+	 * If the budget is exceeded meanwhile, the resolvents added so far are deleted and the clauses are added back,
+	 * so the CNF is no larger than before. This is sound, as clauses deleted because a resolvent subsumes them follow from the clauses added back.
+	 */
+	private void eliminate(int variable) {
+		int[][] positive = removeLiveClauses(2 * variable), negative = removeLiveClauses(2 * variable + 1);
+		int firstResolvent = clauseCount;
+		for (int[] positiveClause : positive) {
+			for (int[] negativeClause : negative) {
+				if (isOverBudget()) {
+					for (int clause = firstResolvent; clause < clauseCount; clause++)
+						if (clauseLengths[clause] >= 0)
+							deleteClause(clause);
+					for (int[][] clauses : new int[][][] { positive, negative })
+						for (int[] clause : clauses)
+							addClause(clause);
+					return;
+				}
+				ensureScratch(positiveClause.length + negativeClause.length);
+				int length = 0;
+				for (int literal : positiveClause)
+					if (literal != variable)
+						scratch[length++] = literal;
+				for (int literal : negativeClause)
+					if (literal != -variable)
+						scratch[length++] = literal;
+				addClause(length);
+				if (unsatisfiable)
+					return;
+			}
+		}
+		eliminated++;
+		eliminatedVariables[variable] = true;
+	}
+
+	/**
+	 * Deletes the live clauses that contain a literal and returns copies of them.
+	 * Copies are needed, as the arena may be compacted while resolvents are added.
+	 */
+	private int[][] removeLiveClauses(int index) {
+		compactOccurrences(index);
+		int[][] clauses = new int[occurrenceSizes[index]][];
+		for (int j = 0; j < clauses.length; j++) {
+			int clause = occurrences[index][j];
+			clauses[j] = Arrays.copyOfRange(arena, clauseStarts[clause], clauseStarts[clause] + clauseLengths[clause]);
+			deleteClause(clause);
+		}
+		occurrences[index] = null;
+		occurrenceSizes[index] = 0;
+		return clauses;
+	}
+
+	/**
+	 * Simplifies the sliced CNF before it is written, as a CNF preprocessor would:
+	 * deletes duplicate and subsumed clauses, strengthens clauses by self-subsuming resolution, and (if projected)
+	 * eliminates removed variables whose elimination adds no clauses (i.e., bounded variable elimination).
+	 * This is repeated until nothing changes, for a bounded number of rounds.
+	 * Tautologies and duplicate literals are already dropped when clauses are added.
+	 * Must be called after {@link #slice()} or {@link #project()}. The budget does not apply, as the CNF does not grow.
+	 */
+	void simplify() {
+		simplifiedClauses = getSlicedClauseCount();
+		simplifiedLiterals = getSlicedLiteralCount();
+		deadline = 0;
+		literalBudget = Long.MAX_VALUE;
+		boolean changed = true;
+		for (int round = 0; round < SIMPLIFICATION_ROUNDS && changed && !unsatisfiable; round++) {
+			changed = subsume();
+			if (projected && !unsatisfiable)
+				changed |= eliminateBounded();
+		}
+	}
+
+	/**
+	 * Deletes all clauses that another clause subsumes, and strengthens all clauses that another clause subsumes
+	 * except for one complementary literal by removing that literal (i.e., self-subsuming resolution).
+	 * Strengthened clauses are checked again, as they may subsume or strengthen further clauses.
+	 *
+	 * @return whether a clause was deleted or strengthened
+	 */
+	private boolean subsume() {
+		for (int index = 2; index < occurrences.length; index++)
+			compactOccurrences(index);
+		// queue of clauses to check, each clause is queued at most once at a time
+		int[] queue = new int[Math.max(clauseCount, 1)];
+		boolean[] queued = new boolean[clauseCount];
+		int head = 0, size = 0;
+		for (int clause = 0; clause < clauseCount; clause++) {
+			if (clauseLengths[clause] > 0) {
+				queue[size++] = clause;
+				queued[clause] = true;
+			}
+		}
+		int subsumed = subsumedClauses, strengthened = strengthenedClauses;
+		while (size > 0 && !unsatisfiable) {
+			int clause = queue[head];
+			head = (head + 1) % queue.length;
+			size--;
+			queued[clause] = false;
+			if (clauseLengths[clause] <= 0)
+				continue;
+			for (int other : subsume(clause)) {
+				if (!queued[other] && clauseLengths[other] >= 0) {
+					queue[(head + size++) % queue.length] = other;
+					queued[other] = true;
+				}
+			}
+		}
+		return subsumedClauses > subsumed || strengthenedClauses > strengthened;
+	}
+
+	/**
+	 * Deletes the clauses that a clause subsumes and strengthens the clauses that it subsumes except for one complementary literal.
+	 * These clauses contain the variable of the clause that occurs least often, so only its two occurrence lists are searched.
+	 * The lists are searched backwards, so removing a strengthened clause from the list being searched does not skip any clause.
+	 *
+	 * @return the strengthened clauses
+	 */
+	private int[] subsume(int clause) {
+		int start = clauseStarts[clause], length = clauseLengths[clause];
+		int variable = Math.abs(arena[start]);
+		for (int k = start; k < start + length; k++) {
+			marks[Math.abs(arena[k])] = arena[k];
+			if (getOccurrenceCount(Math.abs(arena[k])) < getOccurrenceCount(variable))
+				variable = Math.abs(arena[k]);
+		}
+		int[] strengthened = new int[0];
+		int budget = SUBSUMPTION_BUDGET;
+		for (int index = 2 * variable; index <= 2 * variable + 1 && budget > 0 && !unsatisfiable; index++) {
+			for (int j = occurrenceSizes[index] - 1; j >= 0 && budget-- > 0 && !unsatisfiable; j--) {
+				int other = occurrences[index][j];
+				int otherLength = clauseLengths[other];
+				if (other == clause || otherLength < length)
+					continue;
+				int otherStart = clauseStarts[other], matches = 0, complement = 0, complements = 0;
+				for (int k = otherStart; k < otherStart + otherLength && complements < 2; k++) {
+					int mark = marks[Math.abs(arena[k])];
+					if (mark == arena[k])
+						matches++;
+					else if (mark == -arena[k]) {
+						complement = arena[k];
+						complements++;
+					}
+				}
+				if (matches + complements < length || complements > 1)
+					continue;
+				if (complements == 0) {
+					deleteClause(other);
+					subsumedClauses++;
+				} else {
+					strengthen(other, complement);
+					strengthened = Arrays.copyOf(strengthened, strengthened.length + 1);
+					strengthened[strengthened.length - 1] = other;
+				}
+			}
+		}
+		for (int k = start; k < start + length; k++)
+			marks[Math.abs(arena[k])] = 0;
+		return strengthened;
+	}
+
+	private int getOccurrenceCount(int variable) {
+		return liveOccurrences[2 * variable] + liveOccurrences[2 * variable + 1];
+	}
+
+	/**
+	 * Removes a literal from a live clause in place, which is unsatisfiable if the clause becomes empty.
+	 */
+	private void strengthen(int clause, int literal) {
+		boolean mixed = isMixed(clause);
+		int start = clauseStarts[clause], length = clauseLengths[clause];
+		for (int k = start; k < start + length; k++)
+			if (arena[k] == literal)
+				arena[k] = arena[start + length - 1];
+		clauseLengths[clause] = length - 1;
+		liveLiterals--;
+		int index = literalIndex(literal);
+		liveOccurrences[index]--;
+		for (int j = 0; j < occurrenceSizes[index]; j++)
+			if (occurrences[index][j] == clause)
+				occurrences[index][j] = occurrences[index][--occurrenceSizes[index]];
+		updateHeap(Math.abs(literal));
+		mixedClauses += (isMixed(clause) ? 1 : 0) - (mixed ? 1 : 0);
+		strengthenedClauses++;
+		if (length == 1)
+			unsatisfiable = true;
+	}
+
+	/**
+	 * Eliminates the removed variables that are projected away, if this adds no clauses (after dropping tautologies),
+	 * in order of their clause growth.
+	 *
+	 * @return whether a variable was eliminated
+	 */
+	private boolean eliminateBounded() {
+		int[] candidates = IntStream.range(1, names.length).filter(variable -> removed[variable] && !eliminatedVariables[variable])
+				.boxed().sorted(Comparator.comparingLong(this::getGrowth)).mapToInt(Integer::intValue).toArray();
+		boolean changed = false;
+		for (int variable : candidates) {
+			long positive = liveOccurrences[2 * variable], negative = liveOccurrences[2 * variable + 1];
+			if (positive * negative > RESOLUTION_LIMIT || countResolvents(variable) > positive + negative)
+				continue;
+			if (heapPositions[variable] >= 0)
+				removeFromHeap(variable);
+			eliminate(variable);
+			boundedEliminations++;
+			changed = true;
+			if (unsatisfiable)
+				break;
+		}
+		return changed;
+	}
+
+	/**
+	 * Returns how many resolvents on a variable are no tautologies.
+	 */
+	private int countResolvents(int variable) {
+		compactOccurrences(2 * variable);
+		compactOccurrences(2 * variable + 1);
+		int count = 0;
+		for (int i = 0; i < occurrenceSizes[2 * variable]; i++) {
+			int positive = occurrences[2 * variable][i];
+			int start = clauseStarts[positive], length = clauseLengths[positive];
+			for (int k = start; k < start + length; k++)
+				marks[Math.abs(arena[k])] = arena[k];
+			for (int j = 0; j < occurrenceSizes[2 * variable + 1]; j++) {
+				int negative = occurrences[2 * variable + 1][j];
+				boolean tautology = false;
+				for (int k = clauseStarts[negative]; k < clauseStarts[negative] + clauseLengths[negative] && !tautology; k++)
+					tautology = arena[k] != -variable && marks[Math.abs(arena[k])] == -arena[k];
+				if (!tautology)
+					count++;
+			}
+			for (int k = start; k < start + length; k++)
+				marks[Math.abs(arena[k])] = 0;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the live clauses over removed variables that were not eliminated.
+	 */
+	private int[][] getRemainingClauses() {
+		int count = 0;
+		for (int clause = 0; clause < clauseCount; clause++)
+			if (clauseLengths[clause] > 0 && removed[Math.abs(arena[clauseStarts[clause]])])
+				count++;
+		int[][] clauses = new int[count][];
+		count = 0;
+		for (int clause = 0; clause < clauseCount; clause++)
+			if (clauseLengths[clause] > 0 && removed[Math.abs(arena[clauseStarts[clause]])])
+				clauses[count++] = Arrays.copyOfRange(arena, clauseStarts[clause], clauseStarts[clause] + clauseLengths[clause]);
+		return clauses;
+	}
+
+	private boolean isSatisfiable(int[][] clauses) {
+		ISolver solver = CnfWriter.newSolver(names.length - 1, clauses);
+		try {
+			return solver != null && solver.isSatisfiable();
+		} catch (TimeoutException e) {
+			throw new RuntimeException("satisfiability check of sliced clauses timed out", e);
+		}
+	}
+
+	private void updateHeap(int variable) {
+		int position = heapPositions[variable];
+		if (position >= 0) {
+			siftUp(position);
+			siftDown(heapPositions[variable]);
+		}
+	}
+
+	private int removeFromHeap(int variable) {
+		int position = heapPositions[variable];
+		heapPositions[variable] = -1;
+		if (position < --heapSize) {
+			heap[position] = heap[heapSize];
+			heapPositions[heap[position]] = position;
+			updateHeap(heap[position]);
+		}
+		return variable;
+	}
+
+	private void siftUp(int position) {
+		int variable = heap[position];
+		long growth = getGrowth(variable);
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			if (getGrowth(heap[parent]) <= growth)
+				break;
+			heap[position] = heap[parent];
+			heapPositions[heap[position]] = position;
+			position = parent;
+		}
+		heap[position] = variable;
+		heapPositions[variable] = position;
+	}
+
+	private void siftDown(int position) {
+		int variable = heap[position];
+		long growth = getGrowth(variable);
+		while (2 * position + 1 < heapSize) {
+			int child = 2 * position + 1;
+			if (child + 1 < heapSize && getGrowth(heap[child + 1]) < getGrowth(heap[child]))
+				child++;
+			if (getGrowth(heap[child]) >= growth)
+				break;
+			heap[position] = heap[child];
+			heapPositions[heap[position]] = position;
+			position = child;
+		}
+		heap[position] = variable;
+		heapPositions[variable] = position;
+	}
+
+	/**
+	 * Writes statistics on the slicing into a report.
+	 */
+	void report(Report report, int inputClauses) {
+		if (!report.isEnabled())
+			return;
+		if (exhaustedBudget != null) {
+			report.println("eliminated %d of %d removed variables, %d clauses before, %d after, %d at peak%s, "
+							+ "then projected away the other %d after exceeding the %s budget",
+					eliminated, removedCount, inputClauses, getSlicedClauseCount(), peakClauses,
+					chunks > 1 ? String.format(", in %d parallel chunks", chunks) : "", removedCount - eliminated, exhaustedBudget);
+			report.println("eliminated features: %s", getRemovedNames(true));
+			report.println("projected features: %s", getRemovedNames(false));
+		} else if (projected)
+			report.println("projected away %d removed variables, %d clauses before, %d after",
+					removedCount - eliminated, inputClauses, getSlicedClauseCount());
+		else
+			report.println("eliminated %d of %d removed variables, %d clauses before, %d after, %d at peak%s",
+					eliminated, removedCount, inputClauses, getSlicedClauseCount(), peakClauses,
+					chunks > 1 ? String.format(", in %d parallel chunks", chunks) : "");
+		if (simplifiedClauses >= 0)
+			report.println("preprocessing: %d clauses and %d literals before, %d and %d after, "
+							+ "deleted %d subsumed clauses, strengthened %d clauses, eliminated %d projected variables",
+					simplifiedClauses, simplifiedLiterals, getSlicedClauseCount(), getSlicedLiteralCount(),
+					subsumedClauses, strengthenedClauses, boundedEliminations);
+	}
+
+	private String getRemovedNames(boolean eliminated) {
+		StringBuilder sb = new StringBuilder();
+		for (int variable = 1; variable < names.length; variable++) {
+			if (removed[variable] && eliminatedVariables[variable] == eliminated) {
+				if (sb.length() > 0)
+					sb.append(',');
+				sb.append(names[variable]);
+			}
+		}
+		return sb.toString();
+	}
+
+	private int getSlicedClauseCount() {
+		if (unsatisfiable) {
+			for (int variable = 1; variable < names.length; variable++)
+				if (isWritten(variable))
+					return 2;
+			return 1;
+		}
+		int count = 0;
+		for (int clause = 0; clause < clauseCount; clause++)
+			if (isSliced(clause))
+				count++;
+		return count;
+	}
+
+	private int getSlicedLiteralCount() {
+		if (unsatisfiable)
+			return getSlicedClauseCount() - 1;
+		int count = 0;
+		for (int clause = 0; clause < clauseCount; clause++)
+			if (isSliced(clause))
+				count += clauseLengths[clause];
+		return count;
+	}
+
+	/**
+	 * Returns whether a variable belongs to the sliced CNF, that is, whether it is kept or projected away (but not eliminated).
+	 */
+	private boolean isWritten(int variable) {
+		return !removed[variable] || (projected && !eliminatedVariables[variable]);
+	}
+
+	/**
+	 * Returns whether a clause belongs to the sliced CNF, that is, whether it is live and only contains kept variables (unless projected).
+	 */
+	private boolean isSliced(int clause) {
+		return clauseLengths[clause] > 0 && (projected || (!removed[Math.abs(arena[clauseStarts[clause]])] && !isMixed(clause)));
+	}
+
+	/**
+	 * Returns the sliced CNF, with the kept variables in their original order, so it can be sliced further (e.g., for nested slices).
+	 * Removed variables that are projected away follow the kept variables, so they can be removed again.
+	 * An unsatisfiable CNF is returned as an empty clause.
+	 */
+	CNF getSlicedCnf() {
+		int[] numbers = new int[names.length];
+		List<String> slicedNames = new ArrayList<>();
+		for (int variable = 1; variable < names.length; variable++) {
+			if (!removed[variable]) {
+				slicedNames.add(names[variable]);
+				numbers[variable] = slicedNames.size();
+			}
+		}
+		for (int variable = 1; variable < names.length; variable++) {
+			if (removed[variable] && isWritten(variable)) {
+				slicedNames.add(names[variable]);
+				numbers[variable] = slicedNames.size();
+			}
+		}
+		List<LiteralSet> clauses = new ArrayList<>();
+		if (unsatisfiable)
+			clauses.add(new LiteralSet(new int[0]));
+		for (int clause = 0; clause < clauseCount && !unsatisfiable; clause++) {
+			if (isSliced(clause)) {
+				int[] literals = Arrays.copyOfRange(arena, clauseStarts[clause], clauseStarts[clause] + clauseLengths[clause]);
+				for (int k = 0; k < literals.length; k++)
+					literals[k] = literals[k] > 0 ? numbers[literals[k]] : -numbers[-literals[k]];
+				clauses.add(new LiteralSet(literals));
+			}
+		}
+		return new CNF(new Variables(slicedNames), clauses);
+	}
+
+	/**
+	 * Writes the sliced CNF as a DIMACS file into a channel, encoding variable names with the given charset.
+	 * Kept variables are renumbered in their original order, as in CNFSlicer.
+	 * If projected, removed variables follow as auxiliary variables, and a {@code c p show} line lists the kept variables.
+	 * If the budget was exceeded, a comment on the fallback precedes the variable directory (see {@link #getFallbackNote()}).
+	 * An unsatisfiable CNF is written as two contradicting unit clauses (or an empty clause, if no variable is written).
+	 * The channel is not closed.
+	 */
+	void write(WritableByteChannel channel, Charset charset) throws IOException {
+		int[] numbers = new int[names.length];
+		int variableCount = 0;
+		for (int variable = 1; variable < names.length; variable++)
+			if (!removed[variable])
+				numbers[variable] = ++variableCount;
+		int keptCount = variableCount;
+		for (int variable = 1; variable < names.length; variable++)
+			if (removed[variable] && isWritten(variable))
+				numbers[variable] = ++variableCount;
+
+		String[] keptNames = new String[keptCount];
+		for (int variable = 1; variable < names.length; variable++)
+			if (!removed[variable])
+				keptNames[numbers[variable] - 1] = names[variable];
+		OutputBuffer out = new OutputBuffer(channel);
+		if (exhaustedBudget != null)
+			DimacsHeader.writeComment(out, getFallbackNote(), charset);
+		DimacsHeader.write(out, keptNames, variableCount, getSlicedClauseCount(), projected, equivalences, charset);
+		if (unsatisfiable) {
+			if (variableCount > 0) {
+				out.put("1 0\n-1 0\n".getBytes(StandardCharsets.US_ASCII));
+			} else {
+				out.put(DimacsHeader.CLAUSE_END);
+			}
+		} else {
+			for (int clause = 0; clause < clauseCount; clause++) {
+				int length = clauseLengths[clause], start = clauseStarts[clause];
+				if (!isSliced(clause))
+					continue;
+				for (int k = start; k < start + length; k++) {
+					int literal = arena[k];
+					out.putInt(literal > 0 ? numbers[literal] : -numbers[-literal]);
+					out.put((byte) ' ');
+				}
+				out.put(DimacsHeader.CLAUSE_END);
+			}
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,395 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reader for UVL files that builds a {@link FeatureTree} directly.
+ * FeatureIDE parses UVL files into a UVL model first, which it then converts into a feature model,
+ * so large models are held in memory several times over.
+ * This reader supports the Boolean subset of UVL that most models use, that is, a namespace, features with simple attributes,
+ * the four group types, and constraints over features with the usual operators.
+ * Anything else (e.g., imports, group cardinalities, feature types, or constraints spanning several lines) is rare,
+ * so we simply return null for it, and the caller falls back to FeatureIDE to get the same result (or error).
+ * The resulting feature tree is the same as {@link FeatureTree#of} on the feature model read by FeatureIDE,
+ * that is, binary operators associate to the left, and the last or-group or alternative-group of a feature determines its group type.
+ * Constraints are parsed into the {@link FormulaArena} of the feature tree, without creating nodes.
+ */
+public class UvlReader {
+	private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("include", "namespace", "imports", "as", "features",
+			"cardinality", "constraint", "constraints", "sum", "avg", "len", "floor", "ceil", "String", "Integer", "Real",
+			"Arithmetic", "Type", "or", "alternative", "optional", "mandatory", "true", "false", "Boolean"));
+
+	/**
+	 * Thrown when the source is outside the subset supported by this reader.
+	 */
+	private static class UnsupportedSourceException extends RuntimeException {
+		UnsupportedSourceException() {
+			super(null, null, false, false);
+		}
+	}
+
+	private static final UnsupportedSourceException UNSUPPORTED_SOURCE = new UnsupportedSourceException();
+
+	private final CharSequence source;
+	private final FeatureTree.Builder builder = new FeatureTree.Builder();
+	// the start of the content, the end of the content, and the depth of each line that is not blank
+	private final List<int[]> lines = new ArrayList<>();
+	private final FormulaArena formulas = builder.getFormulaArena();
+	private int position;
+	private int end;
+
+	UvlReader(CharSequence source) {
+		this.source = source;
+	}
+
+	/**
+	 * Returns the feature tree of the source, or null if the source is outside the supported subset.
+	 */
+	FeatureTree read() {
+		try {
+			splitLines();
+			int line = 0;
+			if (line < lines.size() && skipKeyword(line, "namespace")) {
+				readUnquotedName();
+				expectEnd();
+				line++;
+			}
+			if (line == lines.size() || !skipKeyword(line, "features"))
+				throw UNSUPPORTED_SOURCE;
+			expectEnd();
+			if (line + 1 == lines.size() || getDepth(line + 1) != 1)
+				throw UNSUPPORTED_SOURCE;
+			line = readFeature(line + 1, -1);
+			if (line < lines.size()) {
+				if (!skipKeyword(line, "constraints") || line + 1 == lines.size())
+					throw UNSUPPORTED_SOURCE;
+				expectEnd();
+				for (line++; line < lines.size(); line++) {
+					if (getDepth(line) != 1)
+						throw UNSUPPORTED_SOURCE;
+					startLine(line);
+					builder.addConstraint(parseEquivalence());
+					expectEnd();
+				}
+			}
+			return builder.build();
+		} catch (UnsupportedSourceException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Splits the source into lines that are not blank, with comments removed, and determines their depth from their indentation.
+	 * As in FeatureIDE, indenting a line further than the previous one increases the depth by one,
+	 * and a line that is indented less must return to the indentation of an enclosing line.
+	 * Indentations must consist either of tabs or of spaces only, so they are compared the same way regardless of the tab width.
+	 */
+	private void splitLines() {
+		int[] indentations = new int[16];
+		int depth = -1;
+		char indentationCharacter = 0;
+		int lineStart = 0;
+		while (lineStart < source.length()) {
+			int lineEnd = lineStart;
+			while (lineEnd < source.length() && source.charAt(lineEnd) != '\n' && source.charAt(lineEnd) != '\r')
+				lineEnd++;
+			int contentStart = lineStart;
+			while (contentStart < lineEnd && isSpace(source.charAt(contentStart)))
+				contentStart++;
+			int contentEnd = getContentEnd(contentStart, lineEnd);
+			if (contentEnd > contentStart) {
+				for (int i = lineStart; i < contentStart; i++) {
+					if (indentationCharacter == 0)
+						indentationCharacter = source.charAt(i);
+					else if (source.charAt(i) != indentationCharacter)
+						throw UNSUPPORTED_SOURCE;
+				}
+				int indentation = contentStart - lineStart;
+				if (depth < 0) {
+					// the first line cannot be indented
+					if (indentation > 0)
+						throw UNSUPPORTED_SOURCE;
+					depth = 0;
+				} else if (indentation > indentations[depth]) {
+					if (++depth == indentations.length)
+						indentations = Arrays.copyOf(indentations, 2 * depth);
+					indentations[depth] = indentation;
+				} else {
+					while (indentations[depth] > indentation)
+						depth--;
+					if (indentations[depth] != indentation)
+						throw UNSUPPORTED_SOURCE;
+				}
+				lines.add(new int[] { contentStart, contentEnd, depth });
+			}
+			lineStart = lineEnd + 1;
+		}
+	}
+
+	/**
+	 * Returns the end of the content of a line, that is, before a comment and trailing spaces.
+	 */
+	private int getContentEnd(int start, int end) {
+		char quote = 0;
+		for (int i = start; i < end; i++) {
+			char c = source.charAt(i);
+			if (c > '~')
+				throw UNSUPPORTED_SOURCE;
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == '/' && i + 1 < end && source.charAt(i + 1) == '/') {
+				end = i;
+			} else if (c == '/' && i + 1 < end && source.charAt(i + 1) == '*') {
+				throw UNSUPPORTED_SOURCE;
+			}
+		}
+		while (end > start && (source.charAt(end - 1) == ' ' || source.charAt(end - 1) == '\t'))
+			end--;
+		return end;
+	}
+
+	private int getDepth(int line) {
+		return lines.get(line)[2];
+	}
+
+	/**
+	 * Sets the position and the end to the content of a line.
+	 */
+	private void startLine(int line) {
+		position = lines.get(line)[0];
+		end = lines.get(line)[1];
+	}
+
+	/**
+	 * Returns whether a line at depth zero starts with a keyword, which is then skipped.
+	 */
+	private boolean skipKeyword(int line, String keyword) {
+		if (getDepth(line) != 0)
+			return false;
+		startLine(line);
+		return skipOperator(keyword) && (position == end || isSpace(source.charAt(position)));
+	}
+
+	/**
+	 * Adds the feature in a line and its subtree.
+	 *
+	 * @return the first line after the subtree
+	 */
+	private int readFeature(int line, int parent) {
+		startLine(line);
+		String name = readName();
+		if (KEYWORDS.contains(name))
+			throw UNSUPPORTED_SOURCE;
+		skipSpaces();
+		if (position < end && source.charAt(position) == '{')
+			readAttributes();
+		expectEnd();
+		if (builder.getName(name) != null)
+			throw UNSUPPORTED_SOURCE;
+		int feature = builder.addFeature(name, parent);
+		int depth = getDepth(line);
+		line++;
+		while (line < lines.size() && getDepth(line) == depth + 1) {
+			String group = source.subSequence(lines.get(line)[0], lines.get(line)[1]).toString();
+			int firstChild = line + 1;
+			if (firstChild == lines.size() || getDepth(firstChild) != depth + 2)
+				throw UNSUPPORTED_SOURCE;
+			List<Integer> children = new ArrayList<>();
+			for (line = firstChild; line < lines.size() && getDepth(line) == depth + 2; ) {
+				children.add(builder.getFeatureCount());
+				line = readFeature(line, feature);
+			}
+			switch (group) {
+				case "or":
+					builder.setGroup(feature, FeatureTree.OR);
+					break;
+				case "alternative":
+					builder.setGroup(feature, FeatureTree.ALTERNATIVE);
+					break;
+				case "optional":
+					break;
+				case "mandatory":
+					for (int child : children)
+						builder.setMandatory(child, true);
+					break;
+				default:
+					throw UNSUPPORTED_SOURCE;
+			}
+		}
+		if (line < lines.size() && getDepth(line) > depth)
+			throw UNSUPPORTED_SOURCE;
+		return line;
+	}
+
+	/**
+	 * Skips simple attributes (e.g., {@code {abstract}} or {@code {abstract true, weight 3}}), which do not matter for the feature tree.
+	 */
+	private void readAttributes() {
+		position++;
+		skipSpaces();
+		if (position < end && source.charAt(position) == '}') {
+			position++;
+			return;
+		}
+		while (true) {
+			if (KEYWORDS.contains(readUnquotedName()))
+				throw UNSUPPORTED_SOURCE;
+			skipSpaces();
+			if (position < end && source.charAt(position) != ',' && source.charAt(position) != '}')
+				readValue();
+			skipSpaces();
+			if (position == end)
+				throw UNSUPPORTED_SOURCE;
+			char c = source.charAt(position++);
+			if (c == '}')
+				return;
+			if (c != ',')
+				throw UNSUPPORTED_SOURCE;
+			skipSpaces();
+		}
+	}
+
+	/**
+	 * Skips a Boolean, a number, or a string.
+	 */
+	private void readValue() {
+		if (source.charAt(position) == '\'') {
+			do
+				position++;
+			while (position < end && source.charAt(position) != '\'');
+			if (position++ == end)
+				throw UNSUPPORTED_SOURCE;
+			return;
+		}
+		int start = position;
+		while (position < end && (isNameCharacter(source.charAt(position)) || source.charAt(position) == '.' || source.charAt(position) == '-'))
+			position++;
+		String value = source.subSequence(start, position).toString();
+		if (!value.equals("true") && !value.equals("false") && !value.matches("-?[0-9]+(\\.[0-9]+)?"))
+			throw UNSUPPORTED_SOURCE;
+	}
+
+	private int parseEquivalence() {
+		int formula = parseImplication();
+		while (skipOperator("<=>"))
+			formula = formulas.operation(FormulaArena.EQUALS, 0, formula, parseImplication());
+		return formula;
+	}
+
+	private int parseImplication() {
+		int formula = parseOr();
+		while (skipOperator("=>"))
+			formula = formulas.operation(FormulaArena.IMPLIES, 0, formula, parseOr());
+		return formula;
+	}
+
+	private int parseOr() {
+		int formula = parseAnd();
+		while (skipOperator("|"))
+			formula = formulas.or(formula, parseAnd());
+		return formula;
+	}
+
+	private int parseAnd() {
+		int formula = parseNot();
+		while (skipOperator("&"))
+			formula = formulas.and(formula, parseNot());
+		return formula;
+	}
+
+	private int parseNot() {
+		if (skipOperator("!"))
+			return formulas.not(parseNot());
+		if (skipOperator("(")) {
+			int formula = parseEquivalence();
+			if (!skipOperator(")"))
+				throw UNSUPPORTED_SOURCE;
+			return formula;
+		}
+		skipSpaces();
+		String name = readName();
+		if (KEYWORDS.contains(name))
+			throw UNSUPPORTED_SOURCE;
+		// constraints may only refer to features, and all literals share the name of their feature
+		String variable = builder.getName(name);
+		if (variable == null)
+			throw UNSUPPORTED_SOURCE;
+		return formulas.literal(variable, true);
+	}
+
+	/**
+	 * Skips spaces and an operator, if it comes next.
+	 */
+	private boolean skipOperator(String operator) {
+		skipSpaces();
+		if (end - position < operator.length())
+			return false;
+		for (int i = 0; i < operator.length(); i++)
+			if (source.charAt(position + i) != operator.charAt(i))
+				return false;
+		// "!=" and "==" are comparisons, which are not supported
+		if (operator.equals("!") && position + 1 < end && source.charAt(position + 1) == '=')
+			throw UNSUPPORTED_SOURCE;
+		position += operator.length();
+		return true;
+	}
+
+	/**
+	 * Returns a feature name, which is either quoted or consists of a letter followed by letters, digits, and underscores.
+	 */
+	private String readName() {
+		if (position < end && source.charAt(position) == '"') {
+			int start = ++position;
+			while (position < end && source.charAt(position) != '"') {
+				// dots separate the namespaces of imported features
+				if (source.charAt(position) == '.')
+					throw UNSUPPORTED_SOURCE;
+				position++;
+			}
+			if (position == end || position == start)
+				throw UNSUPPORTED_SOURCE;
+			return source.subSequence(start, position++).toString();
+		}
+		return readUnquotedName();
+	}
+
+	private String readUnquotedName() {
+		skipSpaces();
+		int start = position;
+		if (position == end || !isLetter(source.charAt(position)))
+			throw UNSUPPORTED_SOURCE;
+		while (position < end && isNameCharacter(source.charAt(position)))
+			position++;
+		if (position < end && !isSpace(source.charAt(position)) && "(){},!&|=<".indexOf(source.charAt(position)) < 0)
+			throw UNSUPPORTED_SOURCE;
+		return source.subSequence(start, position).toString();
+	}
+
+	private void expectEnd() {
+		skipSpaces();
+		if (position != end)
+			throw UNSUPPORTED_SOURCE;
+	}
+
+	private void skipSpaces() {
+		while (position < end && isSpace(source.charAt(position)))
+			position++;
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t';
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isNameCharacter(char c) {
+		return isLetter(c) || (c >= '0' && c <= '9') || c == '_';
+	}
+}
@@ -0,0 +1,47 @@
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel workers for analyses that pose many queries to a SAT solver (see {@link Backbone} and {@link Redundancy}).
+ * There is about one worker per available core, each with a solver of its own, which is only worth loading for a minimum number of items.
+ * Items are split by index: each worker takes every item whose index is congruent to the worker modulo the number of workers,
+ * so neighboring items, which tend to be similar in cost, are spread over all workers.
+ */
+public class Workers {
+	private final int count;
+
+	/**
+	 * Creates workers for the given number of items.
+	 *
+	 * @param items          the number of items
+	 * @param minWorkerItems the minimum number of items per worker
+	 */
+	Workers(int items, int minWorkerItems) {
+		count = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), items / minWorkerItems));
+	}
+
+	/**
+	 * Returns the number of workers.
+	 */
+	int getCount() {
+		return count;
+	}
+
+	/**
+	 * Runs each worker in parallel and returns the sum of their results (e.g., the number of solver calls).
+	 */
+	int run(IntUnaryOperator worker) {
+		return IntStream.range(0, count).parallel().map(worker).sum();
+	}
+
+	/**
+	 * Returns the indices of the items of a worker, in ascending order.
+	 *
+	 * @param worker the worker
+	 * @param start  the index of the first item
+	 * @param end    the index after the last item
+	 */
+	int[] getItems(int worker, int start, int end) {
+		return IntStream.iterate(start + worker, index -> index < end, index -> index + count).toArray();
+	}
+}
@@ -0,0 +1,259 @@
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reader for FeatureIDE's XML files that builds a {@link FeatureTree} directly.
+ * FeatureIDE builds a DOM of the whole file first, which it then converts into a feature model,
+ * whereas this streams the file and keeps only the feature tree and the constraints.
+ * This reader supports the elements FeatureIDE writes, that is, the feature tree, the constraints, and descriptions, properties, and comments.
+ * Anything else (e.g., a feature order, unknown elements, or constraints FeatureIDE would skip with a warning) is rare,
+ * so we simply return null for it, and the caller falls back to FeatureIDE to get the same result (or error).
+ * The resulting feature tree is the same as {@link FeatureTree#of} on the feature model read by FeatureIDE.
+ * Constraints are read into the {@link FormulaArena} of the feature tree, without creating nodes.
+ */
+public class XmlReader {
+	// FeatureIDE looks for these sections anywhere in the file, so they must not be nested in skipped elements
+	private static final Set<String> SECTIONS = new HashSet<>(Arrays.asList("featureModel", "struct", "constraints", "featureOrder"));
+
+	/**
+	 * Thrown when the source is outside the subset supported by this reader.
+	 */
+	private static class UnsupportedSourceException extends RuntimeException {
+		UnsupportedSourceException() {
+			super(null, null, false, false);
+		}
+	}
+
+	private static final UnsupportedSourceException UNSUPPORTED_SOURCE = new UnsupportedSourceException();
+
+	private final CharSequence source;
+	private final FeatureTree.Builder builder = new FeatureTree.Builder();
+	// FeatureIDE reads the constraints after the feature tree, so they are only added when all features are known
+	private final FormulaArena formulas = builder.getFormulaArena();
+	private final List<Integer> constraints = new ArrayList<>();
+	private XMLStreamReader reader;
+
+	XmlReader(CharSequence source) {
+		this.source = source;
+	}
+
+	/**
+	 * Returns the feature tree of the source, or null if the source is outside the supported subset.
+	 */
+	FeatureTree read() {
+		try {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+			factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			reader = factory.createXMLStreamReader(new StringReader(source.toString()));
+			if (!nextElement() || !reader.getLocalName().equals("featureModel"))
+				throw UNSUPPORTED_SOURCE;
+			boolean struct = false;
+			while (nextElement()) {
+				switch (reader.getLocalName()) {
+					case "struct":
+						if (struct)
+							throw UNSUPPORTED_SOURCE;
+						struct = true;
+						readStruct();
+						break;
+					case "constraints":
+						readConstraints();
+						break;
+					case "comments":
+					case "calculations":
+					case "properties":
+						skipElement();
+						break;
+					default:
+						throw UNSUPPORTED_SOURCE;
+				}
+			}
+			if (!struct)
+				throw UNSUPPORTED_SOURCE;
+			while (reader.hasNext())
+				reader.next();
+			// replace the names in the literals by the names of their features, which must exist
+			formulas.replaceVariables(variable -> {
+				String name = builder.getName((String) variable);
+				if (name == null)
+					throw UNSUPPORTED_SOURCE;
+				return name;
+			});
+			for (int constraint : constraints)
+				builder.addConstraint(constraint);
+			return builder.build();
+		} catch (UnsupportedSourceException | XMLStreamException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Advances to the next child element of the current element, skipping text, comments, and processing instructions.
+	 *
+	 * @return whether there is such a child element, otherwise the end of the current element is reached
+	 */
+	private boolean nextElement() throws XMLStreamException {
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					return true;
+				case XMLStreamConstants.END_ELEMENT:
+					return false;
+				case XMLStreamConstants.DTD:
+					throw UNSUPPORTED_SOURCE;
+				default:
+					break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Skips the current element (e.g., a description), which does not matter for the feature tree.
+	 */
+	private void skipElement() throws XMLStreamException {
+		for (int depth = 1; depth > 0; ) {
+			if (nextElement()) {
+				if (SECTIONS.contains(reader.getLocalName()))
+					throw UNSUPPORTED_SOURCE;
+				depth++;
+			} else {
+				depth--;
+			}
+		}
+	}
+
+	private void readStruct() throws XMLStreamException {
+		if (!nextElement())
+			throw UNSUPPORTED_SOURCE;
+		readFeature(-1);
+		// FeatureIDE would replace the root by a later one
+		if (nextElement())
+			throw UNSUPPORTED_SOURCE;
+	}
+
+	/**
+	 * Adds the feature of the current element and its subtree.
+	 * As in FeatureIDE, the element determines the group type and the attribute determines whether the feature is mandatory.
+	 */
+	private void readFeature(int parent) throws XMLStreamException {
+		byte group;
+		switch (reader.getLocalName()) {
+			case "and":
+			case "feature":
+				group = FeatureTree.AND;
+				break;
+			case "or":
+				group = FeatureTree.OR;
+				break;
+			case "alt":
+				group = FeatureTree.ALTERNATIVE;
+				break;
+			default:
+				throw UNSUPPORTED_SOURCE;
+		}
+		String name = null;
+		boolean mandatory = false;
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			if (reader.getAttributeLocalName(i).equals("name"))
+				name = reader.getAttributeValue(i);
+			else if (reader.getAttributeLocalName(i).equals("mandatory"))
+				mandatory = reader.getAttributeValue(i).equals("true");
+		}
+		if (name == null || name.isEmpty())
+			throw UNSUPPORTED_SOURCE;
+		if (builder.getName(name) != null)
+			throw UNSUPPORTED_SOURCE;
+		int feature = builder.addFeature(name, parent);
+		builder.setGroup(feature, group);
+		builder.setMandatory(feature, mandatory);
+		while (nextElement()) {
+			switch (reader.getLocalName()) {
+				case "description":
+				case "graphics":
+				case "property":
+					skipElement();
+					break;
+				default:
+					readFeature(feature);
+			}
+		}
+	}
+
+	private void readConstraints() throws XMLStreamException {
+		while (nextElement()) {
+			if (!reader.getLocalName().equals("rule"))
+				throw UNSUPPORTED_SOURCE;
+			int constraint = -1;
+			while (nextElement()) {
+				switch (reader.getLocalName()) {
+					case "description":
+					case "graphics":
+					case "property":
+					case "tags":
+						skipElement();
+						break;
+					default:
+						// FeatureIDE skips rules with several nodes
+						if (constraint != -1)
+							throw UNSUPPORTED_SOURCE;
+						constraint = readNode();
+				}
+			}
+			if (constraint == -1)
+				throw UNSUPPORTED_SOURCE;
+			constraints.add(constraint);
+		}
+	}
+
+	/**
+	 * Returns the formula of the current element, whose operands must match the arity of its operator.
+	 */
+	private int readNode() throws XMLStreamException {
+		String element = reader.getLocalName();
+		if (element.equals("var"))
+			return formulas.literal(reader.getElementText(), true);
+		List<Integer> children = new ArrayList<>();
+		while (nextElement())
+			children.add(readNode());
+		int[] operands = children.stream().mapToInt(Integer::intValue).toArray();
+		switch (element) {
+			case "disj":
+				if (operands.length == 0)
+					throw UNSUPPORTED_SOURCE;
+				return formulas.or(operands);
+			case "conj":
+				if (operands.length == 0)
+					throw UNSUPPORTED_SOURCE;
+				return formulas.and(operands);
+			case "eq":
+				if (operands.length != 2)
+					throw UNSUPPORTED_SOURCE;
+				return formulas.operation(FormulaArena.EQUALS, 0, operands);
+			case "imp":
+				if (operands.length != 2)
+					throw UNSUPPORTED_SOURCE;
+				return formulas.operation(FormulaArena.IMPLIES, 0, operands);
+			case "not":
+				if (operands.length != 1)
+					throw UNSUPPORTED_SOURCE;
+				return formulas.not(operands[0]);
+			case "atmost1":
+				if (operands.length == 0)
+					throw UNSUPPORTED_SOURCE;
+				return formulas.operation(FormulaArena.AT_MOST, 1, operands);
+			default:
+				throw UNSUPPORTED_SOURCE;
+		}
+	}
+}
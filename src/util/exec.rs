@@ -11,26 +11,31 @@ use std::{
 };
 use tempfile::NamedTempFile;
 
-/// Returns the path of a bundled external program.
+/// Returns the path of a bundled external program or file, if it exists.
 ///
-/// Looks up the program (a) as a sibling of the currently running executable, (b) in the working directory,
+/// Looks up the file (a) as a sibling of the currently running executable, (b) in the working directory,
 /// and (c) in the `bin` directory in the working directory, if that exists.
-fn path(file_name: &str) -> String {
+fn try_path(file_name: &str) -> Option<String> {
     let mut path = env::current_exe().unwrap();
     path.pop();
     path.push(file_name);
     if path.exists() {
-        return path.to_str().unwrap().to_owned();
+        return Some(path.to_str().unwrap().to_owned());
     }
     let path = Path::new(file_name).to_path_buf();
     if path.exists() {
-        return format!("./{}", file_name);
+        return Some(format!("./{}", file_name));
     }
     let path = Path::new(&format!("bin/{}", file_name)).to_path_buf();
     if path.exists() {
-        return path.to_str().unwrap().to_owned();
+        return Some(path.to_str().unwrap().to_owned());
     }
-    unreachable!()
+    None
+}
+
+/// Returns the path of a bundled external program.
+fn path(file_name: &str) -> String {
+    try_path(file_name).expect(&format!("could not find bundled program {}", file_name))
 }
 
 /// Attempts to find a solution of some CNF in DIMACS format.
@@ -113,15 +118,30 @@ pub(crate) fn bc_minisat_all(cnf: &str) -> (impl Iterator<Item = Vec<VarId>>, Na
 
 /// Converts a given feature-model file from one format into another.
 ///
-/// Runs the tool FeatureIDE using the Java runtime environment.
+/// Runs the tool FeatureIDE using the Java runtime environment, or its native binary, if available.
 pub(crate) fn io(
     file: &File,
     output_format: &str,
     variables: &[&str],
 ) -> File {
-    let process = Command::new("java")
-        .arg("-jar")
-        .arg(path("io.jar"))
+    let mut command = match try_path("io-native") {
+        // prefer the native binary, if it has been built, as it avoids JVM startup entirely
+        Some(native) => Command::new(native),
+        None => {
+            let mut command = Command::new("java");
+            if let Some(archive) = try_path("io.jsa") {
+                // speeds up startup with the class-data-sharing archive created by the io build;
+                // the JVM ignores the archive if it does not match, and we send its warnings to standard error,
+                // as they would otherwise go to standard output, which we parse
+                command
+                    .arg(format!("-XX:SharedArchiveFile={}", archive))
+                    .arg("-Xlog:all=warning:stderr");
+            }
+            command.arg("-jar").arg(path("io.jar"));
+            command
+        }
+    };
+    let process = command
         .arg(&file.name)
         .arg(output_format)
         .arg(variables.join(","))
@@ -137,9 +157,18 @@ pub(crate) fn io(
     let mut error = String::new();
     process.stdout.unwrap().read_to_string(&mut output).unwrap();
     process.stderr.unwrap().read_to_string(&mut error).unwrap();
-    if error.trim() == "No path set for model. Can't load imported models." {
-        error = String::new();
+    // JVM warnings (e.g., on a mismatching class-data-sharing archive) are shown, but do not fail the conversion
+    let (warnings, errors): (Vec<&str>, Vec<&str>) =
+        error.lines().partition(|line| line.contains("][warning]["));
+    for warning in warnings {
+        eprintln!("{}", warning);
     }
+    // FeatureIDE prints this for models read from standard input, which cannot import other models anyway
+    let error = errors
+        .into_iter()
+        .filter(|line| line.trim() != "No path set for model. Can't load imported models.")
+        .collect::<Vec<_>>()
+        .join("\n");
     if !error.is_empty() {
         println!("{}", error);
     }